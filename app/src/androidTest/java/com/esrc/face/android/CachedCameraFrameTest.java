@@ -0,0 +1,102 @@
+package com.esrc.face.android;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opencv.android.CachedCameraFrame;
+import org.opencv.android.OpenCVLoader;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Scalar;
+
+import static org.junit.Assert.*;
+
+/**
+ * Counts the conversions a {@link CachedCameraFrame} runs per frame.
+ */
+@RunWith(AndroidJUnit4.class)
+public class CachedCameraFrameTest {
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 480;
+
+    @BeforeClass
+    public static void loadOpenCV() {
+        assertTrue(OpenCVLoader.initDebug());
+    }
+
+    @Test
+    public void convertsOncePerFrame() {
+        TestFrame frame = new TestFrame();
+        try {
+            for (int i = 0; i < 3; i++) {
+                frame.newContent(i * 10);
+                int before = frame.getConversionCount();
+
+                // Several consumers of the same frame
+                Mat rgba = frame.rgba();
+                assertSame(rgba, frame.rgba());
+                assertSame(frame.gray(), frame.gray());
+                frame.rgba(1);
+                frame.rgba(2);
+                frame.rgba(2);
+                frame.gray(1);
+                frame.gray(1);
+
+                // One color conversion and three downscales
+                assertEquals(4, frame.getConversionCount() - before);
+                assertEquals(i + 1, frame.mColorConversions);
+                assertEquals(WIDTH / 4, frame.rgba(2).cols());
+                assertEquals(HEIGHT / 2, frame.gray(1).rows());
+                assertEquals(i * 10, frame.rgba().get(0, 0)[0], 0);
+            }
+        } finally {
+            frame.destroy();
+        }
+    }
+
+    @Test
+    public void reusesBuffersAcrossFrames() {
+        TestFrame frame = new TestFrame();
+        try {
+            frame.newContent(0);
+            long rgbaAddr = frame.rgba().dataAddr();
+            long halfAddr = frame.rgba(1).dataAddr();
+            frame.newContent(1);
+            assertEquals(rgbaAddr, frame.rgba().dataAddr());
+            assertEquals(halfAddr, frame.rgba(1).dataAddr());
+        } finally {
+            frame.destroy();
+        }
+    }
+
+    private static class TestFrame extends CachedCameraFrame {
+        private final Mat mLuma = new Mat(HEIGHT, WIDTH, CvType.CV_8UC1);
+        private int mValue;
+        int mColorConversions;
+
+        void newContent(int value) {
+            mValue = value;
+            mLuma.setTo(new Scalar(value));
+            invalidate(false);
+        }
+
+        @Override
+        protected void convertRgba(Mat dst) {
+            dst.create(HEIGHT, WIDTH, CvType.CV_8UC4);
+            dst.setTo(new Scalar(mValue, mValue, mValue, 255));
+            mColorConversions++;
+        }
+
+        @Override
+        protected Mat createGray() {
+            return mLuma.submat(0, HEIGHT, 0, WIDTH);
+        }
+
+        void destroy() {
+            releaseBuffers();
+            mLuma.release();
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.esrc.face.android;
+
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opencv.android.OpenCVLoader;
+import org.opencv.core.Mat;
+import org.opencv.utils.Converters;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Micro-benchmark of the boxed List and the primitive paths of {@link Converters}, round-tripping
+ * float vectors of the size of a 68 point landmark set, a 468 point face mesh and a large array.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ConvertersBenchmark {
+    private static final String TAG = "ConvertersBenchmark";
+    private static final int WARMUP = 100;
+    private static final int ITERATIONS = 1000;
+
+    @BeforeClass
+    public static void loadOpenCV() {
+        assertTrue(OpenCVLoader.initDebug());
+    }
+
+    @Test
+    public void benchmark68() {
+        run(68);
+    }
+
+    @Test
+    public void benchmark468() {
+        run(468);
+    }
+
+    @Test
+    public void benchmark10k() {
+        run(10000);
+    }
+
+    private void run(int count) {
+        List<Float> boxedIn = new ArrayList<>(count);
+        List<Float> boxedOut = new ArrayList<>(count);
+        float[] arrayIn = new float[count];
+        float[] arrayOut = new float[count];
+        for (int i = 0; i < count; i++) {
+            arrayIn[i] = i * 0.5f;
+            boxedIn.add(arrayIn[i]);
+        }
+        // A direct buffer has no accessible array and goes through the staging chunks
+        FloatBuffer bufferIn = ByteBuffer.allocateDirect(count * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+        FloatBuffer bufferOut = ByteBuffer.allocateDirect(count * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+        bufferIn.put(arrayIn).rewind();
+        Mat mat = new Mat();
+
+        long boxedNanos = 0;
+        long arrayNanos = 0;
+        long bufferNanos = 0;
+        for (int i = 0; i < WARMUP + ITERATIONS; i++) {
+            long start = System.nanoTime();
+            Mat boxed = Converters.vector_float_to_Mat(boxedIn);
+            Converters.Mat_to_vector_float(boxed, boxedOut);
+            boxed.release();
+            long boxedEnd = System.nanoTime();
+            Converters.vector_float_to_Mat(arrayIn, count, mat);
+            Converters.Mat_to_vector_float(mat, arrayOut);
+            long arrayEnd = System.nanoTime();
+            Converters.vector_float_to_Mat(bufferIn, mat);
+            Converters.Mat_to_vector_float(mat, bufferOut);
+            long bufferEnd = System.nanoTime();
+            if (i >= WARMUP) {
+                boxedNanos += boxedEnd - start;
+                arrayNanos += arrayEnd - boxedEnd;
+                bufferNanos += bufferEnd - arrayEnd;
+            }
+        }
+
+        Log.i(TAG, count + " floats: List<Float> " + (boxedNanos / ITERATIONS) + " ns/op, float[] "
+                + (arrayNanos / ITERATIONS) + " ns/op, FloatBuffer " + (bufferNanos / ITERATIONS) + " ns/op");
+        for (int i = 0; i < count; i++) {
+            assertEquals(arrayIn[i], boxedOut.get(i), 0f);
+            assertEquals(arrayIn[i], arrayOut[i], 0f);
+            assertEquals(arrayIn[i], bufferOut.get(i), 0f);
+        }
+        mat.release();
+    }
+}
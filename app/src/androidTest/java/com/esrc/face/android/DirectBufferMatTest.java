@@ -0,0 +1,108 @@
+package com.esrc.face.android;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opencv.android.JavaCamera2View;
+import org.opencv.android.OpenCVLoader;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.DirectBufferMat;
+import org.opencv.core.Mat;
+import org.opencv.core.Scalar;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that a {@link DirectBufferMat} and its buffer share their data, and that the I420
+ * conversion packing odd sizes through one matches the reference implementation.
+ */
+@RunWith(AndroidJUnit4.class)
+public class DirectBufferMatTest {
+    @BeforeClass
+    public static void loadOpenCV() {
+        assertTrue(OpenCVLoader.initDebug());
+    }
+
+    @Test
+    public void bufferAndMatShareData() {
+        DirectBufferMat mat = new DirectBufferMat(4, 8, CvType.CV_8UC1);
+        ByteBuffer buffer = mat.buffer();
+        assertTrue(buffer.isDirect());
+        assertEquals(32, buffer.capacity());
+
+        buffer.put(9, (byte) 42);
+        byte[] value = new byte[1];
+        mat.get(1, 1, value);
+        assertEquals(42, value[0]);
+
+        mat.setTo(new Scalar(7));
+        assertEquals(7, buffer.get(31));
+        assertTrue(mat.isBufferValid());
+
+        // Reallocation moves the data out of the buffer
+        mat.create(8, 8, CvType.CV_8UC1);
+        assertFalse(mat.isBufferValid());
+        mat.release();
+    }
+
+    @Test
+    public void wrapsStridedBuffer() {
+        ByteBuffer plane = ByteBuffer.allocateDirect(3 * 16);
+        plane.put(16 + 2, (byte) 5);
+        DirectBufferMat mat = new DirectBufferMat(3, 10, CvType.CV_8UC1, plane, 16);
+        byte[] value = new byte[1];
+        mat.get(1, 2, value);
+        assertEquals(5, value[0]);
+        assertSame(plane, mat.buffer());
+        mat.release();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsHeapBuffer() {
+        new DirectBufferMat(2, 2, CvType.CV_8UC1, ByteBuffer.allocate(4));
+    }
+
+    @Test
+    public void packedI420MatchesReference() {
+        // A height that is not a multiple of 4 cannot be viewed as I420 without repacking
+        int w = 320;
+        int h = 242;
+        int yStride = w + 32;
+        int chromaStride = w / 2 + 32;
+        ByteBuffer y = plane(yStride, h, 0);
+        ByteBuffer u = plane(chromaStride, h / 2, 85);
+        ByteBuffer v = plane(chromaStride, h / 2, 170);
+
+        Mat yMat = new Mat(h, w, CvType.CV_8UC1, y, yStride);
+        Mat packedRgba = new Mat();
+        JavaCamera2View.I420Converter converter = new JavaCamera2View.I420Converter();
+        converter.convert(yMat, u, v, chromaStride, packedRgba);
+        assertEquals(0, u.position());
+
+        Mat referenceYuv = new Mat();
+        Mat referenceRgba = new Mat();
+        JavaCamera2View.I420Converter.copyI420(y, yStride, u, v, chromaStride, w, h,
+                new byte[w * (h + h / 2)], referenceYuv, referenceRgba);
+        assertEquals(0.0, Core.norm(referenceRgba, packedRgba, Core.NORM_INF), 0.0);
+
+        converter.release();
+        yMat.release();
+        packedRgba.release();
+        referenceYuv.release();
+        referenceRgba.release();
+    }
+
+    private static ByteBuffer plane(int stride, int rows, int seed) {
+        ByteBuffer plane = ByteBuffer.allocateDirect(stride * rows);
+        for (int i = 0; i < stride * rows; i++) {
+            plane.put((byte) ((i * 31 + seed) & 0xff));
+        }
+        plane.rewind();
+        return plane;
+    }
+}
@@ -0,0 +1,94 @@
+package com.esrc.face.android;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.os.Debug;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opencv.android.CameraBridgeViewBase;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that drawing a frame in CameraBridgeViewBase allocates nothing once the draw
+ * geometry has been computed for the current canvas and frame size.
+ */
+@RunWith(AndroidJUnit4.class)
+public class DrawPathAllocationTest {
+    private static final int FRAMES = 300;
+
+    private TestCameraView mView;
+    private Canvas mCanvas;
+    private Bitmap mFrame;
+
+    @Before
+    public void setUp() {
+        final Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mView = new TestCameraView(context);
+            }
+        });
+        mCanvas = new Canvas(Bitmap.createBitmap(1080, 1920, Bitmap.Config.ARGB_8888));
+        mFrame = Bitmap.createBitmap(640, 480, Bitmap.Config.ARGB_8888);
+    }
+
+    @Test
+    public void drawWithoutScale_allocatesNothing() {
+        mView.setScale(0);
+        assertEquals(0, countDrawAllocations());
+    }
+
+    @Test
+    public void drawWithScale_allocatesNothing() {
+        mView.setScale(1.6875f);
+        assertEquals(0, countDrawAllocations());
+    }
+
+    // The thread allocation counters are deprecated, but still counted by ART and the only
+    // per-thread ones; art.gc.objects-allocated also counts the other threads of the process.
+    @SuppressWarnings("deprecation")
+    private int countDrawAllocations() {
+        // The first frame computes and caches the geometry
+        mView.drawFrame(mCanvas, mFrame);
+
+        Debug.startAllocCounting();
+        Debug.resetThreadAllocCount();
+        for (int i = 0; i < FRAMES; i++) {
+            mView.drawFrame(mCanvas, mFrame);
+        }
+        int allocations = Debug.getThreadAllocCount();
+        Debug.stopAllocCounting();
+        return allocations;
+    }
+
+    private static class TestCameraView extends CameraBridgeViewBase {
+        TestCameraView(Context context) {
+            super(context, CAMERA_ID_ANY);
+        }
+
+        void setScale(float scale) {
+            mScale = scale;
+        }
+
+        void drawFrame(Canvas canvas, Bitmap bitmap) {
+            drawFrameBitmap(canvas, bitmap);
+        }
+
+        @Override
+        protected boolean connectCamera(int width, int height) {
+            return false;
+        }
+
+        @Override
+        protected void disconnectCamera() {
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.esrc.face.android;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.esrc.face.android.tracking.FaceTracker;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opencv.android.OpenCVLoader;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented test of {@link FaceTracker}, which needs the OpenCV native library.
+ */
+@RunWith(AndroidJUnit4.class)
+public class FaceTrackerTest {
+    private static final long FRAME_NANOS = 33333333L;
+
+    @BeforeClass
+    public static void loadOpenCV() {
+        assertTrue(OpenCVLoader.initDebug());
+    }
+
+    @Test
+    public void predictsBetweenDetections() {
+        FaceTracker tracker = new FaceTracker(1000);
+        try {
+            // The face moves 3 px per frame to the right and is detected every third frame
+            for (int frame = 0; frame < 90; frame++) {
+                long time = frame * FRAME_NANOS;
+                int x = 100 + 3 * frame;
+                if (frame % 3 == 0) {
+                    tracker.correctFace(time, x, 200, 120, 120);
+                }
+                assertTrue(tracker.predict(time));
+                if (frame >= 60) {
+                    assertEquals(x, tracker.getFaceX(), 6);
+                    assertEquals(200, tracker.getFaceY(), 6);
+                    assertEquals(120, tracker.getFaceWidth(), 6);
+                }
+            }
+        } finally {
+            tracker.release();
+        }
+    }
+
+    @Test
+    public void correctsDetectionOlderThanPrediction() {
+        FaceTracker tracker = new FaceTracker(1000);
+        try {
+            tracker.correctFace(0, 100, 100, 80, 80);
+            assertTrue(tracker.predict(2 * FRAME_NANOS));
+            // Detected before the last prediction, e.g. delivered late by the SDK
+            tracker.correctFace(FRAME_NANOS, 100, 100, 80, 80);
+            tracker.correctFace(FRAME_NANOS, 100, 100, 80, 80);
+            assertEquals(100, tracker.getFaceX(), 1);
+            assertEquals(80, tracker.getFaceWidth(), 1);
+        } finally {
+            tracker.release();
+        }
+    }
+
+    @Test
+    public void dropsFaceAfterCoastTime() {
+        FaceTracker tracker = new FaceTracker(100);
+        try {
+            tracker.correctFace(0, 0, 0, 50, 50);
+            tracker.correctHeadPose(0, 10f, 0f, 0f);
+            assertTrue(tracker.predict(50000000L));
+            assertEquals(10f, tracker.getYaw(), 1f);
+            assertFalse(tracker.predict(200000000L));
+            assertFalse(tracker.hasFace());
+        } finally {
+            tracker.release();
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.esrc.face.android;
+
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opencv.android.JavaCamera2View;
+import org.opencv.android.OpenCVLoader;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Micro-benchmark of the planar YUV_420_888 to RGBA conversion of JavaCamera2View.
+ * Compares the byte[] repacking path with the strided Mat path on synthetic planes
+ * whose row strides are padded the way camera HALs usually pad them.
+ */
+@RunWith(AndroidJUnit4.class)
+public class I420ConversionBenchmark {
+    private static final String TAG = "I420ConversionBenchmark";
+    private static final int WARMUP = 10;
+    private static final int ITERATIONS = 100;
+    private static final int ROW_PADDING = 64;
+
+    @BeforeClass
+    public static void loadOpenCV() {
+        assertTrue(OpenCVLoader.initDebug());
+    }
+
+    @Test
+    public void benchmark720p() {
+        run(1280, 720);
+    }
+
+    @Test
+    public void benchmark1080p() {
+        run(1920, 1080);
+    }
+
+    private void run(int w, int h) {
+        int yStride = w + ROW_PADDING;
+        int chromaStride = w / 2 + ROW_PADDING;
+        ByteBuffer y = syntheticPlane(yStride, h, 0);
+        ByteBuffer u = syntheticPlane(chromaStride, h / 2, 85);
+        ByteBuffer v = syntheticPlane(chromaStride, h / 2, 170);
+
+        Mat yMat = new Mat(h, w, CvType.CV_8UC1, y, yStride);
+        Mat copyYuv = new Mat();
+        Mat copyRgba = new Mat();
+        Mat stridedRgba = new Mat();
+        JavaCamera2View.I420Converter converter = new JavaCamera2View.I420Converter();
+
+        long copyNanos = 0;
+        long stridedNanos = 0;
+        for (int i = 0; i < WARMUP + ITERATIONS; i++) {
+            y.rewind();
+            u.rewind();
+            v.rewind();
+            long start = System.nanoTime();
+            // What rgba() did before: a new staging array on every call
+            JavaCamera2View.I420Converter.copyI420(y, yStride, u, v, chromaStride, w, h,
+                    new byte[w * (h + h / 2)], copyYuv, copyRgba);
+            long mid = System.nanoTime();
+            converter.convert(yMat, u, v, chromaStride, stridedRgba);
+            long end = System.nanoTime();
+            if (i >= WARMUP) {
+                copyNanos += mid - start;
+                stridedNanos += end - mid;
+            }
+        }
+
+        Log.i(TAG, w + "x" + h + ": byte[] copy " + (copyNanos / ITERATIONS / 1000) + " us/frame, strided Mat "
+                + (stridedNanos / ITERATIONS / 1000) + " us/frame");
+        assertEquals(0.0, Core.norm(copyRgba, stridedRgba, Core.NORM_INF), 0.0);
+
+        converter.release();
+        yMat.release();
+        copyYuv.release();
+        copyRgba.release();
+        stridedRgba.release();
+    }
+
+    private static ByteBuffer syntheticPlane(int stride, int rows, int seed) {
+        ByteBuffer plane = ByteBuffer.allocateDirect(stride * rows);
+        for (int i = 0; i < stride * rows; i++) {
+            plane.put((byte) ((i * 31 + seed) & 0xff));
+        }
+        plane.rewind();
+        return plane;
+    }
+}
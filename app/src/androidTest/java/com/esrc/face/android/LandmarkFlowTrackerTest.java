@@ -0,0 +1,146 @@
+package com.esrc.face.android;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.esrc.face.android.tracking.LandmarkFlowTracker;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opencv.android.OpenCVLoader;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented test of {@link LandmarkFlowTracker} on a shifted synthetic texture.
+ */
+@RunWith(AndroidJUnit4.class)
+public class LandmarkFlowTrackerTest {
+    private static final int SIZE = 320;
+    private static final int GRID = 6;
+
+    @BeforeClass
+    public static void loadOpenCV() {
+        assertTrue(OpenCVLoader.initDebug());
+    }
+
+    @Test
+    public void followsShiftedImage() {
+        Mat texture = texture();
+        Mat frame0 = texture.submat(20, 20 + SIZE, 20, 20 + SIZE);
+        Mat frame1 = texture.submat(20, 20 + SIZE, 17, 17 + SIZE);  // content moves 3 px to the right
+        LandmarkFlowTracker tracker = new LandmarkFlowTracker(GRID * GRID, 0.2f, 30f, 0.5f, 10);
+        try {
+            double[] x = new double[GRID * GRID];
+            double[] y = new double[GRID * GRID];
+            for (int i = 0; i < x.length; i++) {
+                x[i] = 100 + 20 * (i % GRID);
+                y[i] = 100 + 20 * (i / GRID);
+            }
+            tracker.setLandmarks(true, x, y);
+            tracker.track(frame0);
+            assertFalse(tracker.needsDetection());
+            tracker.track(frame1);
+            assertFalse(tracker.needsDetection());
+
+            float[] tx = new float[x.length];
+            float[] ty = new float[y.length];
+            assertEquals(x.length, tracker.getLandmarks(tx, ty));
+            for (int i = 0; i < x.length; i++) {
+                assertEquals(x[i] + 3, tx[i], 0.5);
+                assertEquals(y[i], ty[i], 0.5);
+            }
+
+            tracker.clear();
+            assertTrue(tracker.needsDetection());
+            assertEquals(0, tracker.getLandmarks(tx, ty));
+        } finally {
+            tracker.release();
+            frame0.release();
+            frame1.release();
+            texture.release();
+        }
+    }
+
+    @Test
+    public void catchesUpFromFedFrame() {
+        Mat texture = texture();
+        Mat[] frames = new Mat[4];
+        for (int i = 0; i < frames.length; i++) {
+            frames[i] = texture.submat(20, 20 + SIZE, 20 - 3 * i, 20 - 3 * i + SIZE);  // 3 px to the right per frame
+        }
+        LandmarkFlowTracker tracker = new LandmarkFlowTracker(GRID * GRID, 0.2f, 30f, 0.5f, 10);
+        try {
+            double[] x = grid(false);
+            double[] y = grid(true);
+            tracker.track(frames[0]);
+            long fed = tracker.onFed();
+            tracker.track(frames[1]);
+            tracker.track(frames[2]);
+
+            // Detected in the fed frame, delivered two frames later
+            tracker.setLandmarks(fed, true, x, y);
+            tracker.track(frames[3]);
+            assertFalse(tracker.needsDetection());
+
+            float[] tx = new float[x.length];
+            float[] ty = new float[y.length];
+            assertEquals(x.length, tracker.getLandmarks(tx, ty));
+            for (int i = 0; i < x.length; i++) {
+                assertEquals(x[i] + 9, tx[i], 0.5);
+                assertEquals(y[i], ty[i], 0.5);
+            }
+        } finally {
+            tracker.release();
+            for (Mat frame : frames) {
+                frame.release();
+            }
+            texture.release();
+        }
+    }
+
+    @Test
+    public void dropsLandmarksOfFrameNoLongerKept() {
+        Mat texture = texture();
+        Mat frame = texture.submat(20, 20 + SIZE, 20, 20 + SIZE);
+        LandmarkFlowTracker tracker = new LandmarkFlowTracker(GRID * GRID, 0.2f, 30f, 0.5f, 10);
+        try {
+            tracker.track(frame);
+            long fed = tracker.onFed();
+            for (int i = 0; i < 8; i++) {
+                tracker.track(frame);
+                tracker.onFed();
+            }
+            tracker.setLandmarks(fed, true, grid(false), grid(true));
+            tracker.track(frame);
+            assertTrue(tracker.needsDetection());
+            assertEquals(0, tracker.getLandmarks(new float[GRID * GRID], new float[GRID * GRID]));
+        } finally {
+            tracker.release();
+            frame.release();
+            texture.release();
+        }
+    }
+
+    /**
+     * Returns the x or y coordinates of a grid of landmarks 20 px apart.
+     */
+    private static double[] grid(boolean y) {
+        double[] values = new double[GRID * GRID];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = 100 + 20 * (y ? i / GRID : i % GRID);
+        }
+        return values;
+    }
+
+    private static Mat texture() {
+        Mat texture = new Mat(SIZE + 40, SIZE + 40, CvType.CV_8UC1);
+        Core.randn(texture, 128, 40);
+        Imgproc.GaussianBlur(texture, texture, new org.opencv.core.Size(5, 5), 1.5);
+        return texture;
+    }
+}
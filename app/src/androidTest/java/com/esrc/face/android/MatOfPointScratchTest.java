@@ -0,0 +1,85 @@
+package com.esrc.face.android;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opencv.android.OpenCVLoader;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.MatOfPoint2f;
+import org.opencv.core.MatOfRect;
+import org.opencv.core.Point;
+import org.opencv.core.Rect;
+
+import static org.junit.Assert.*;
+
+/**
+ * Round-trips points and rectangles through the scratch buffer variants of
+ * {@link MatOfPoint}, {@link MatOfPoint2f} and {@link MatOfRect}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class MatOfPointScratchTest {
+    @BeforeClass
+    public static void loadOpenCV() {
+        assertTrue(OpenCVLoader.initDebug());
+    }
+
+    @Test
+    public void point2fReusesCallerArrays() {
+        Point[] in = {new Point(1.5, 2.5), new Point(3.5, 4.5), new Point(99, 99)};
+        float[] scratch = new float[8];
+        MatOfPoint2f mat = new MatOfPoint2f();
+        mat.fromArray(in, 2, scratch);
+        assertEquals(2, mat.total());
+
+        Point[] out = {new Point(), null, new Point()};
+        Point first = out[0];
+        assertEquals(2, mat.toArray(out, scratch));
+        assertSame(first, out[0]);
+        assertEquals(in[0], out[0]);
+        assertEquals(in[1], out[1]);
+
+        float[] xy = new float[4];
+        assertEquals(2, mat.toXY(xy));
+        assertArrayEquals(new float[] {1.5f, 2.5f, 3.5f, 4.5f}, xy, 0f);
+        mat.release();
+    }
+
+    @Test
+    public void pointTruncatesFlatCoordinates() {
+        int[] scratch = new int[4];
+        MatOfPoint mat = new MatOfPoint();
+        mat.fromXY(new float[] {1.7f, 2.2f, 3.9f, 4.1f}, 2, scratch);
+
+        Point[] out = new Point[2];
+        assertEquals(2, mat.toArray(out, scratch));
+        assertEquals(new Point(1, 2), out[0]);
+        assertEquals(new Point(3, 4), out[1]);
+        mat.release();
+    }
+
+    @Test
+    public void rectReusesCallerArrays() {
+        Rect[] in = {new Rect(1, 2, 3, 4), new Rect(5, 6, 7, 8)};
+        int[] scratch = new int[8];
+        MatOfRect mat = new MatOfRect();
+        mat.fromArray(in, 2, scratch);
+
+        Rect[] out = new Rect[2];
+        assertEquals(2, mat.toArray(out, scratch));
+        assertEquals(in[0], out[0]);
+        assertEquals(in[1], out[1]);
+        mat.release();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsShortScratch() {
+        MatOfPoint2f mat = new MatOfPoint2f(new Point(1, 2), new Point(3, 4));
+        try {
+            mat.toArray(new Point[2], new float[3]);
+        } finally {
+            mat.release();
+        }
+    }
+}
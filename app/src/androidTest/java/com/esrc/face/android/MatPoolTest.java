@@ -0,0 +1,98 @@
+package com.esrc.face.android;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opencv.android.OpenCVLoader;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatPool;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks reuse, counters and eviction of a {@link MatPool}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class MatPoolTest {
+    @BeforeClass
+    public static void loadOpenCV() {
+        assertTrue(OpenCVLoader.initDebug());
+    }
+
+    @Test
+    public void reusesMatsOfTheSameShape() {
+        MatPool pool = new MatPool(1 << 20);
+        Mat first = pool.acquire(100, 100, CvType.CV_8UC1);
+        pool.release(first);
+
+        assertSame(first, pool.acquire(100, 100, CvType.CV_8UC1));
+        Mat other = pool.acquire(100, 100, CvType.CV_8UC4);
+        assertNotSame(first, other);
+        assertEquals(1, pool.getHitCount());
+        assertEquals(2, pool.getMissCount());
+        assertEquals(0, pool.getIdleCount());
+
+        pool.release(first);
+        pool.release(other);
+        pool.clear();
+        assertTrue(first.empty());
+        assertTrue(other.empty());
+    }
+
+    @Test
+    public void evictsLeastRecentlyReleased() {
+        // Room for two 100x100 CV_8UC1 Mats
+        MatPool pool = new MatPool(20000);
+        Mat a = pool.acquire(100, 100, CvType.CV_8UC1);
+        Mat b = pool.acquire(100, 100, CvType.CV_8UC1);
+        Mat c = pool.acquire(100, 100, CvType.CV_8UC1);
+        pool.release(a);
+        pool.release(b);
+        pool.release(c);
+
+        assertEquals(1, pool.getEvictionCount());
+        assertEquals(2, pool.getIdleCount());
+        assertEquals(20000, pool.getIdleBytes());
+        assertTrue(a.empty());
+        assertSame(c, pool.acquire(100, 100, CvType.CV_8UC1));
+        pool.clear();
+    }
+
+    @Test
+    public void evictsOldestAcrossShapes() {
+        // Room for two 100x100 CV_8UC1 Mats or one of them and a 50x50 CV_8UC4 one
+        MatPool pool = new MatPool(20000);
+        Mat gray = pool.acquire(100, 100, CvType.CV_8UC1);
+        Mat rgba = pool.acquire(50, 50, CvType.CV_8UC4);
+        Mat next = pool.acquire(100, 100, CvType.CV_8UC1);
+        pool.release(gray);
+        pool.release(rgba);
+        pool.release(next);
+
+        assertEquals(1, pool.getEvictionCount());
+        assertTrue(gray.empty());
+        assertSame(rgba, pool.acquire(50, 50, CvType.CV_8UC4));
+        assertSame(next, pool.acquire(100, 100, CvType.CV_8UC1));
+        assertEquals(0, pool.getIdleCount());
+        assertEquals(0, pool.getIdleBytes());
+        rgba.release();
+        next.release();
+    }
+
+    @Test
+    public void releasesMatsThatCannotBePooled() {
+        MatPool pool = new MatPool(1000);
+        Mat large = pool.acquire(100, 100, CvType.CV_8UC1);
+        pool.release(large);
+        assertTrue(large.empty());
+
+        Mat frame = new Mat(10, 10, CvType.CV_8UC1);
+        Mat roi = frame.submat(0, 5, 0, 5);
+        pool.release(roi);
+        assertEquals(0, pool.getIdleCount());
+        frame.release();
+    }
+}
@@ -0,0 +1,109 @@
+package com.esrc.face.android;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opencv.android.OpenCVLoader;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatScope;
+import org.opencv.core.Rect;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that a {@link MatScope} releases the Mats it owns when it is closed, and reports the
+ * ones it keeps in debug mode.
+ */
+@RunWith(AndroidJUnit4.class)
+public class MatScopeTest {
+    @BeforeClass
+    public static void loadOpenCV() {
+        assertTrue(OpenCVLoader.initDebug());
+    }
+
+    @Test
+    public void closeReleasesOwnedMats() {
+        Mat frame = new Mat(480, 640, CvType.CV_8UC1);
+        MatScope scope = new MatScope();
+        Mat created = scope.mat(240, 320, CvType.CV_8UC1);
+        Mat roi = scope.track(frame.submat(new Rect(0, 0, 100, 100)));
+        assertEquals(2, scope.size());
+
+        scope.close();
+        assertEquals(0, scope.size());
+        assertTrue(created.empty());
+        assertTrue(roi.empty());
+        // Releasing a submat does not touch the Mat it views
+        assertFalse(frame.empty());
+        frame.release();
+    }
+
+    @Test
+    public void detachedMatSurvivesClose() {
+        MatScope scope = new MatScope();
+        Mat kept = scope.mat(10, 10, CvType.CV_32F);
+        Mat dropped = scope.mat(10, 10, CvType.CV_32F);
+        assertTrue(scope.detach(kept));
+        assertFalse(scope.detach(kept));
+
+        scope.close();
+        assertFalse(kept.empty());
+        assertTrue(dropped.empty());
+        kept.release();
+    }
+
+    @Test
+    public void scopeCanBeReused() {
+        MatScope scope = new MatScope();
+        for (int i = 0; i < 3; i++) {
+            Mat mat = scope.mat(10, 10, CvType.CV_8UC1);
+            assertEquals(1, scope.size());
+            scope.close();
+            assertTrue(mat.empty());
+        }
+    }
+
+    @Test
+    public void debugModeReportsScopeThatMissesClose() {
+        int maxSize = MatScope.getMaxSize();
+        MatScope.clearLeaks();
+        MatScope.setDebug(true);
+        MatScope.setMaxSize(4);
+        MatScope scope = new MatScope();
+        try {
+            for (int i = 0; i < 4; i++) {
+                scope.mat(2, 2, CvType.CV_8UC1);
+            }
+            assertEquals(0, MatScope.getLeakCount());
+
+            // The fifth Mat exceeds the limit, every owned Mat is reported once
+            scope.mat(2, 2, CvType.CV_8UC1);
+            scope.mat(2, 2, CvType.CV_8UC1);
+            assertEquals(5, MatScope.getLeakCount());
+
+            StringWriter dump = new StringWriter();
+            MatScope.dumpLeaks(new PrintWriter(dump));
+            assertTrue(dump.toString().contains("5 leaked Mats"));
+            assertTrue(dump.toString().contains("Mat allocated here"));
+            assertTrue(dump.toString().contains("debugModeReportsScopeThatMissesClose"));
+
+            // A closed scope is checked again
+            scope.close();
+            for (int i = 0; i < 5; i++) {
+                scope.mat(2, 2, CvType.CV_8UC1);
+            }
+            assertEquals(10, MatScope.getLeakCount());
+        } finally {
+            scope.close();
+            MatScope.setDebug(false);
+            MatScope.setMaxSize(maxSize);
+            MatScope.clearLeaks();
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.esrc.face.android;
+
+import com.esrc.face.sdk.android.ESRC;
+import com.esrc.face.sdk.android.ESRCException;
+import com.esrc.face.sdk.android.ESRCType;
+
+/**
+ * ESRC handler that forwards every callback to another handler.
+ * Subclasses override the callbacks they want to observe and call super to pass them on.
+ */
+public class ForwardingESRCHandler implements ESRC.ESRCHandler {
+    private final ESRC.ESRCHandler mDelegate;
+
+    public ForwardingESRCHandler(ESRC.ESRCHandler delegate) {
+        mDelegate = delegate;
+    }
+
+    @Override
+    public void onAnalyzedMeasureEnv(ESRCType.MeasureEnv measureEnv, ESRCException e) {
+        mDelegate.onAnalyzedMeasureEnv(measureEnv, e);
+    }
+
+    @Override
+    public void onDetectedFace(ESRCType.Face face, ESRCException e) {
+        mDelegate.onDetectedFace(face, e);
+    }
+
+    @Override
+    public void onDetectedFacialLandmark(ESRCType.FacialLandmark facialLandmark, ESRCException e) {
+        mDelegate.onDetectedFacialLandmark(facialLandmark, e);
+    }
+
+    @Override
+    public void onAnalyzedFacialActionUnit(ESRCType.FacialActionUnit facialActionUnit, ESRCException e) {
+        mDelegate.onAnalyzedFacialActionUnit(facialActionUnit, e);
+    }
+
+    @Override
+    public void onRecognizedBasicFacialExpression(ESRCType.BasicFacialExpression basicFacialExpression, ESRCException e) {
+        mDelegate.onRecognizedBasicFacialExpression(basicFacialExpression, e);
+    }
+
+    @Override
+    public void onRecognizedValenceFacialExpression(ESRCType.ValenceFacialExpression valenceFacialExpression, ESRCException e) {
+        mDelegate.onRecognizedValenceFacialExpression(valenceFacialExpression, e);
+    }
+
+    @Override
+    public void onEstimatedHeadPose(ESRCType.HeadPose headPose, ESRCException e) {
+        mDelegate.onEstimatedHeadPose(headPose, e);
+    }
+
+    @Override
+    public void onRecognizedAttention(ESRCType.Attention attention, ESRCException e) {
+        mDelegate.onRecognizedAttention(attention, e);
+    }
+}
@@ -18,12 +18,22 @@ import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
 
+import com.esrc.face.android.log.ResultLog;
+import com.esrc.face.android.result.CategoricalSmoother;
+import com.esrc.face.android.store.LandmarkStore;
+import com.esrc.face.android.ui.ResultSnapshot;
+import com.esrc.face.android.ui.UiUpdateDispatcher;
 import com.esrc.face.sdk.android.ESRC;
 import com.esrc.face.sdk.android.ESRCException;
 import com.esrc.face.sdk.android.ESRCFragment;
 import com.esrc.face.sdk.android.ESRCLicense;
 import com.esrc.face.sdk.android.ESRCType;
 
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.io.PrintWriter;
+
 import static android.Manifest.permission.CAMERA;
 import static android.Manifest.permission.INTERNET;
 import static android.Manifest.permission.READ_EXTERNAL_STORAGE;
@@ -33,6 +43,9 @@ public class MainActivity extends AppCompatActivity implements ActivityCompat.On
     private static final String TAG = "MainActivity";
     private static final String APP_ID = "";  // Application ID.
 
+    // Whether to record the facial landmarks and action units, which takes about 140 MB of storage
+    private static final boolean RECORD_LANDMARKS = false;
+
     // Permission
     private static final int PERMISSIONS_REQUEST_CODE = 1000;
     private static final String[] PERMISSIONS = {INTERNET, CAMERA, READ_EXTERNAL_STORAGE, WRITE_EXTERNAL_STORAGE};
@@ -47,10 +60,21 @@ public class MainActivity extends AppCompatActivity implements ActivityCompat.On
             true,  // Whether recognize basic facial expression or not. If enableFace is false, it is also automatically set to false.
             true);  // Whether recognize valence facial expression or not. If enableFace is false, it is also automatically set to false.
 
+    // Smoothing of the displayed expressions and attention
+    private static final ESRCType.BasicFacialExpression.Emotion[] BASIC_EMOTIONS = ESRCType.BasicFacialExpression.Emotion.values();
+    private static final ESRCType.ValenceFacialExpression.Emotion[] VALENCE_EMOTIONS = ESRCType.ValenceFacialExpression.Emotion.values();
+    private CategoricalSmoother mBasicFacialExpSmoother = CategoricalSmoother.majority(BASIC_EMOTIONS.length, 5);
+    private CategoricalSmoother mValenceFacialExpSmoother = CategoricalSmoother.majority(VALENCE_EMOTIONS.length, 5);
+    private CategoricalSmoother mAttentionSmoother = CategoricalSmoother.ema(2, 0.3f).setHysteresis(0.7f, 0.3f);
+    private String[] mBasicFacialExpStrs = new String[BASIC_EMOTIONS.length];
+    private String[] mValenceFacialExpStrs = new String[VALENCE_EMOTIONS.length];
+
     // Layout variables for FaceBox
     private TextView mFaceBoxText;
     private ImageView mFaceBoxImage;
     private GradientDrawable mFaceBoxDrawable;
+    private int mFaceBoxDetectedColor;
+    private int mFaceBoxUndetectedColor;
 
     // Layout variables for Basic Facial Expression
     private int[] mBasicFacialExpImageDrawables;
@@ -68,6 +92,15 @@ public class MainActivity extends AppCompatActivity implements ActivityCompat.On
     private View mAttentionValContainer;
     private TextView mAttentionValText;
 
+    // Merges results into one view update per display frame
+    private UiUpdateDispatcher mUiUpdateDispatcher;
+
+    // Recording of the facial landmarks and action units, half an hour in one minute chunks at 60 fps
+    private LandmarkStore mLandmarkStore;
+
+    // Sampled log of the results, dumped with: adb shell dumpsys activity com.esrc.face.android/.MainActivity
+    private ResultLog mResultLog = new ResultLog(TAG, Log.DEBUG, 1024, 30);
+
     // Dialog variables
     private Handler mHandler = new Handler();
 
@@ -95,8 +128,12 @@ public class MainActivity extends AppCompatActivity implements ActivityCompat.On
         ESRC.init(APP_ID, this, new ESRCLicense.ESRCLicenseHandler() {
             @Override
             public void onValidatedLicense() {
-                // Start
-                start();
+                // Start, after opening the landmark recording if enabled
+                if (RECORD_LANDMARKS) {
+                    openLandmarkStoreAndStart();
+                } else {
+                    start();
+                }
             }
 
             @Override
@@ -121,10 +158,18 @@ public class MainActivity extends AppCompatActivity implements ActivityCompat.On
     protected void onDestroy() {
         // Stop
         stop();
+        mUiUpdateDispatcher.cancel();
+        closeLandmarkStore();
 
         super.onDestroy();
     }
 
+    @Override
+    public void dump(String prefix, FileDescriptor fd, PrintWriter writer, String[] args) {
+        super.dump(prefix, fd, writer, args);
+        mResultLog.dump(prefix, writer);
+    }
+
     /**
      * Initialize layout.
      */
@@ -133,6 +178,8 @@ public class MainActivity extends AppCompatActivity implements ActivityCompat.On
         mFaceBoxText = findViewById(R.id.facebox_text);
         mFaceBoxImage = findViewById(R.id.facebox_image);
         mFaceBoxDrawable = (GradientDrawable) mFaceBoxImage.getBackground();
+        mFaceBoxDetectedColor = getResources().getColor(R.color.primary_color);
+        mFaceBoxUndetectedColor = getResources().getColor(R.color.gray);
 
         // Initialize layout for Basic Facial Expression
         mBasicFacialExpImageDrawables = new int[] {
@@ -155,6 +202,117 @@ public class MainActivity extends AppCompatActivity implements ActivityCompat.On
         // Initialize layout for Attention
         mAttentionValContainer = findViewById(R.id.attention_val_container);
         mAttentionValText = findViewById(R.id.attention_val_text);
+
+        // Initialize dispatcher for view updates
+        mUiUpdateDispatcher = new UiUpdateDispatcher(new UiUpdateDispatcher.Renderer() {
+            @Override
+            public void render(ResultSnapshot snapshot, ResultSnapshot previous) {
+                renderResult(snapshot, previous);
+            }
+        });
+    }
+
+    /**
+     * Apply the result snapshot to the views, skipping values that have not changed.
+     */
+    private void renderResult(ResultSnapshot snapshot, ResultSnapshot previous) {
+        // FaceBox
+        if (previous == null || snapshot.isFaceDetected() != previous.isFaceDetected()) {
+            if (snapshot.isFaceDetected()) {
+                mFaceBoxText.setTextColor(mFaceBoxDetectedColor);
+                mFaceBoxDrawable.setStroke(8, mFaceBoxDetectedColor);
+            } else {
+                mFaceBoxText.setTextColor(mFaceBoxUndetectedColor);
+                mFaceBoxDrawable.setStroke(4, mFaceBoxUndetectedColor);
+            }
+        }
+
+        // Basic Facial Expression
+        ESRCType.BasicFacialExpression.Emotion basicEmotion = snapshot.getBasicFacialExpEmotion();
+        if (basicEmotion != null && (previous == null || basicEmotion != previous.getBasicFacialExpEmotion())) {
+            mBasicFacialExpImage.setImageResource(mBasicFacialExpImageDrawables[basicEmotion.ordinal()]);
+        }
+        String basicEmotionStr = snapshot.getBasicFacialExpEmotionStr();
+        if (basicEmotionStr != null && (previous == null || !basicEmotionStr.equals(previous.getBasicFacialExpEmotionStr()))) {
+            mBasicFacialExpValText.setText(basicEmotionStr);
+        }
+        if (previous == null || snapshot.isBasicFacialExpVisible() != previous.isBasicFacialExpVisible()) {
+            mBasicFacialExpValContainer.setVisibility(snapshot.isBasicFacialExpVisible() ? View.VISIBLE : View.GONE);
+        }
+
+        // Valence Facial Expression
+        ESRCType.ValenceFacialExpression.Emotion valenceEmotion = snapshot.getValenceFacialExpEmotion();
+        if (valenceEmotion != null && (previous == null || valenceEmotion != previous.getValenceFacialExpEmotion())) {
+            mValenceFacialExpImage.setImageResource(mValenceFacialExpImageDrawables[valenceEmotion.ordinal()]);
+        }
+        String valenceEmotionStr = snapshot.getValenceFacialExpEmotionStr();
+        if (valenceEmotionStr != null && (previous == null || !valenceEmotionStr.equals(previous.getValenceFacialExpEmotionStr()))) {
+            mValenceFacialExpValText.setText(valenceEmotionStr);
+        }
+        if (previous == null || snapshot.isValenceFacialExpVisible() != previous.isValenceFacialExpVisible()) {
+            mValenceFacialExpValContainer.setVisibility(snapshot.isValenceFacialExpVisible() ? View.VISIBLE : View.GONE);
+        }
+
+        // Attention
+        Boolean attend = snapshot.getAttend();
+        if (attend != null && (previous == null || !attend.equals(previous.getAttend()))) {
+            mAttentionValText.setText(attend ? "O" : "X");
+        }
+        if (previous == null || snapshot.isAttentionVisible() != previous.isAttentionVisible()) {
+            mAttentionValContainer.setVisibility(snapshot.isAttentionVisible() ? View.VISIBLE : View.GONE);
+        }
+    }
+
+    /**
+     * Opens the recording of facial landmarks and action units on a background thread, then starts ESRC process.
+     */
+    private void openLandmarkStoreAndStart() {
+        final File directory = new File(getFilesDir(), "landmarks");
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                LandmarkStore store = null;
+                try {
+                    store = new LandmarkStore(directory, 128, 64, 3600, 30);
+                } catch (IOException e) {
+                    Log.w(TAG, "Cannot open the landmark store", e);
+                }
+                final LandmarkStore opened = store;
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        mLandmarkStore = opened;
+                        if (isFinishing()) {
+                            // Destroyed while opening
+                            closeLandmarkStore();
+                        } else {
+                            start();
+                        }
+                    }
+                });
+            }
+        }, "OpenLandmarkStore").start();
+    }
+
+    /**
+     * Wraps a handler so that its facial landmarks and action units are recorded, if the store could be opened.
+     */
+    private ESRC.ESRCHandler recordLandmarks(ESRC.ESRCHandler handler) {
+        return mLandmarkStore != null ? mLandmarkStore.wrap(handler) : handler;
+    }
+
+    /**
+     * Closes the recording of facial landmarks and action units.
+     */
+    private void closeLandmarkStore() {
+        if (mLandmarkStore != null) {
+            try {
+                mLandmarkStore.close();
+            } catch (IOException e) {
+                Log.w(TAG, "Cannot close the landmark store", e);
+            }
+            mLandmarkStore = null;
+        }
     }
 
     /**
@@ -162,130 +320,117 @@ public class MainActivity extends AppCompatActivity implements ActivityCompat.On
      */
     private void start() {
         // Start ESRC
-        ESRC.start(mProperty, new ESRC.ESRCHandler() {
+        ESRC.start(mProperty, recordLandmarks(new ESRC.ESRCHandler() {
             @Override
             public void onAnalyzedMeasureEnv(ESRCType.MeasureEnv measureEnv, ESRCException e) {
                 if (e == null) {
-                    Log.d(TAG, "onAnalyzedMeasureEnv: " + measureEnv.toString());
+                    mResultLog.record(ResultLog.TYPE_MEASURE_ENV, ResultLog.NO_VALUE, measureEnv);
                 } else {
-                    e.printStackTrace();
+                    mResultLog.recordError(ResultLog.TYPE_MEASURE_ENV, e);
                 }
             }
 
             @Override
             public void onDetectedFace(ESRCType.Face face, ESRCException e) {
                 if (e == null) {
-                    Log.d(TAG, "onDetectedFace: " + face.toString());
-
-                    // If face is detected
-                    if (face.getIsDetect()) {
-                        // Show FaceBox
-                        int color = getResources().getColor(R.color.primary_color);
-                        mFaceBoxText.setTextColor(color);
-                        mFaceBoxDrawable.setStroke(8, color);
-
-                        // Show Attention containers
-                        mAttentionValContainer.setVisibility(View.VISIBLE);
-                    } else {
-                        // Hide FaceBox
-                        int color = getResources().getColor(R.color.gray);
-                        mFaceBoxText.setTextColor(color);
-                        mFaceBoxDrawable.setStroke(4, color);
-
-                        // Hide containers
-                        mBasicFacialExpValContainer.setVisibility(View.GONE);
-                        mValenceFacialExpValContainer.setVisibility(View.GONE);
-                        mAttentionValContainer.setVisibility(View.GONE);
+                    mResultLog.record(ResultLog.TYPE_FACE, face.getIsDetect() ? 1 : 0, face);
+
+                    // Start smoothing over when the face is lost
+                    if (!face.getIsDetect()) {
+                        mBasicFacialExpSmoother.reset();
+                        mValenceFacialExpSmoother.reset();
+                        mAttentionSmoother.reset();
                     }
+
+                    // Show or hide FaceBox and containers
+                    mUiUpdateDispatcher.onDetectedFace(face.getIsDetect());
                 } else {
-                    e.printStackTrace();
+                    mResultLog.recordError(ResultLog.TYPE_FACE, e);
                 }
             }
 
             @Override
             public void onDetectedFacialLandmark(ESRCType.FacialLandmark facialLandmark, ESRCException e) {
                 if (e == null) {
-                    Log.d(TAG, "onDetectedFacialLandmark: " + facialLandmark.toString());
+                    mResultLog.record(ResultLog.TYPE_FACIAL_LANDMARK, ResultLog.NO_VALUE, facialLandmark);
                 } else {
-                    e.printStackTrace();
+                    mResultLog.recordError(ResultLog.TYPE_FACIAL_LANDMARK, e);
                 }
             }
 
             @Override
             public void onAnalyzedFacialActionUnit(ESRCType.FacialActionUnit facialActionUnit, ESRCException e) {
                 if (e == null) {
-                    Log.d(TAG, "onAnalyzedFacialActionUnit: " + facialActionUnit.toString());
+                    mResultLog.record(ResultLog.TYPE_FACIAL_ACTION_UNIT, ResultLog.NO_VALUE, facialActionUnit);
                 } else {
-                    e.printStackTrace();
+                    mResultLog.recordError(ResultLog.TYPE_FACIAL_ACTION_UNIT, e);
                 }
             }
 
             @Override
             public void onRecognizedBasicFacialExpression(ESRCType.BasicFacialExpression basicFacialExpression, ESRCException e) {
                 if (e == null) {
-                    Log.d(TAG, "onRecognizedBasicFacialExpression: " + basicFacialExpression.toString());
-
-                    // Set Basic Facial Expression values
                     ESRCType.BasicFacialExpression.Emotion emotion = basicFacialExpression.getEmotion();
+                    mResultLog.record(ResultLog.TYPE_BASIC_FACIAL_EXPRESSION, emotion != null ? emotion.ordinal() : ResultLog.NO_VALUE, basicFacialExpression);
+
+                    // Smooth Basic Facial Expression
                     if (emotion != null) {
-                        mBasicFacialExpImage.setImageResource(mBasicFacialExpImageDrawables[emotion.ordinal()]);
+                        mBasicFacialExpStrs[emotion.ordinal()] = basicFacialExpression.getEmotionStr();
                     }
-                    mBasicFacialExpValText.setText(basicFacialExpression.getEmotionStr());
+                    int smoothed = mBasicFacialExpSmoother.update(emotion != null ? emotion.ordinal() : CategoricalSmoother.NONE);
 
-                    // Show container for Basic Facial Expression
-                    mBasicFacialExpValContainer.setVisibility(View.VISIBLE);
+                    // Set Basic Facial Expression values and show its container
+                    if (smoothed != CategoricalSmoother.NONE) {
+                        mUiUpdateDispatcher.onRecognizedBasicFacialExpression(BASIC_EMOTIONS[smoothed], mBasicFacialExpStrs[smoothed]);
+                    }
                 } else {
-                    e.printStackTrace();
+                    mResultLog.recordError(ResultLog.TYPE_BASIC_FACIAL_EXPRESSION, e);
                 }
             }
 
             @Override
             public void onRecognizedValenceFacialExpression(ESRCType.ValenceFacialExpression valenceFacialExpression, ESRCException e) {
                 if (e == null) {
-                    Log.d(TAG, "onRecognizedValenceFacialExpression: " + valenceFacialExpression.toString());
-
-                    // Set Basic Facial Expression values
                     ESRCType.ValenceFacialExpression.Emotion emotion = valenceFacialExpression.getEmotion();
+                    mResultLog.record(ResultLog.TYPE_VALENCE_FACIAL_EXPRESSION, emotion != null ? emotion.ordinal() : ResultLog.NO_VALUE, valenceFacialExpression);
+
+                    // Smooth Valence Facial Expression
                     if (emotion != null) {
-                        mValenceFacialExpImage.setImageResource(mValenceFacialExpImageDrawables[emotion.ordinal()]);
+                        mValenceFacialExpStrs[emotion.ordinal()] = valenceFacialExpression.getEmotionStr();
                     }
-                    mValenceFacialExpValText.setText(valenceFacialExpression.getEmotionStr());
+                    int smoothed = mValenceFacialExpSmoother.update(emotion != null ? emotion.ordinal() : CategoricalSmoother.NONE);
 
-                    // Show container for Valence Facial Expression
-                    mValenceFacialExpValContainer.setVisibility(View.VISIBLE);
+                    // Set Valence Facial Expression values and show its container
+                    if (smoothed != CategoricalSmoother.NONE) {
+                        mUiUpdateDispatcher.onRecognizedValenceFacialExpression(VALENCE_EMOTIONS[smoothed], mValenceFacialExpStrs[smoothed]);
+                    }
                 } else {
-                    e.printStackTrace();
+                    mResultLog.recordError(ResultLog.TYPE_VALENCE_FACIAL_EXPRESSION, e);
                 }
             }
 
             @Override
             public void onEstimatedHeadPose(ESRCType.HeadPose headPose, ESRCException e) {
                 if (e == null) {
-                    Log.d(TAG, "onEstimatedHeadPose: " + headPose.toString());
+                    mResultLog.record(ResultLog.TYPE_HEAD_POSE, ResultLog.NO_VALUE, headPose);
                 } else {
-                    e.printStackTrace();
+                    mResultLog.recordError(ResultLog.TYPE_HEAD_POSE, e);
                 }
             }
 
             @Override
             public void onRecognizedAttention(ESRCType.Attention attention, ESRCException e) {
                 if (e == null) {
-                    Log.d(TAG, "onRecognizedAttention: " + attention.toString());
+                    mResultLog.record(ResultLog.TYPE_ATTENTION, attention.getIsAttend() ? 1 : 0, attention);
 
-                    // Set Attention values
-                    if(attention.getIsAttend()) {
-                        mAttentionValText.setText("O");
-                    } else {
-                        mAttentionValText.setText("X");
-                    }
-
-                    // Show container for Attention
-                    mAttentionValContainer.setVisibility(View.VISIBLE);
+                    // Set smoothed Attention values and show its container
+                    int smoothed = mAttentionSmoother.update(attention.getIsAttend() ? 1 : 0);
+                    mUiUpdateDispatcher.onRecognizedAttention(smoothed == 1);
                 } else {
-                    e.printStackTrace();
+                    mResultLog.recordError(ResultLog.TYPE_ATTENTION, e);
                 }
             }
-        });
+        }));
     }
 
     /**
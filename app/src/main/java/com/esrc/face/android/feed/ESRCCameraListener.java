@@ -0,0 +1,159 @@
+package com.esrc.face.android.feed;
+
+import android.os.SystemClock;
+
+import com.esrc.face.android.ForwardingESRCHandler;
+import com.esrc.face.android.tracking.LandmarkFlowTracker;
+import com.esrc.face.sdk.android.ESRC;
+import com.esrc.face.sdk.android.ESRCException;
+import com.esrc.face.sdk.android.ESRCType;
+
+import org.opencv.android.CameraBridgeViewBase;
+import org.opencv.core.Mat;
+
+/**
+ * Camera listener that feeds the ESRC SDK through a {@link FeedScheduler}.
+ *
+ * Use it instead of the ESRC Fragment when the app owns the camera view:
+ * <pre>
+ * ESRCCameraListener listener = new ESRCCameraListener(new FeedScheduler(150, 2));
+ * ESRC.start(property, listener.wrap(handler));
+ * cameraView.setCvCameraViewListener(listener);
+ * </pre>
+ */
+public class ESRCCameraListener implements CameraBridgeViewBase.CvCameraViewListener2,
+        CameraBridgeViewBase.CvCameraViewFrameFormat {
+    private final FeedScheduler mScheduler;
+    private ModuleRateController mRateController;
+    private LandmarkFlowTracker mLandmarkTracker;
+    private RoiFeed mRoiFeed;
+    private ResolutionLadder mResolutionLadder;
+    private volatile int mFrameFormat = CameraBridgeViewBase.RGBA;
+
+    public ESRCCameraListener(FeedScheduler scheduler) {
+        mScheduler = scheduler;
+    }
+
+    /**
+     * Wraps the app's handler so the scheduler sees when each fed frame has been answered.
+     * A frame is answered by its face callback, which the SDK calls for every analyzed frame
+     * whether or not a face was found and whichever other modules are enabled.
+     */
+    public ESRC.ESRCHandler wrap(ESRC.ESRCHandler handler) {
+        return new ForwardingESRCHandler(handler) {
+            @Override
+            public void onDetectedFace(ESRCType.Face face, ESRCException e) {
+                onResult(SystemClock.elapsedRealtimeNanos());
+                super.onDetectedFace(face, e);
+            }
+        };
+    }
+
+    public FeedScheduler getScheduler() {
+        return mScheduler;
+    }
+
+    /**
+     * Limits the feed rate to the fastest module of the controller. Pass null to feed as fast as the scheduler allows.
+     */
+    public void setRateController(ModuleRateController rateController) {
+        mRateController = rateController;
+    }
+
+    /**
+     * Tracks the landmarks on every frame and feeds only when the tracker needs a new detection.
+     * Frames that are not fed get no results from any module, see LandmarkFlowTracker.
+     * Pass null (the default) to feed regardless of the landmarks. The tracker must also wrap the handler.
+     */
+    public void setLandmarkTracker(LandmarkFlowTracker landmarkTracker) {
+        mLandmarkTracker = landmarkTracker;
+    }
+
+    /**
+     * Feeds only the region around the last face. Pass null to feed full frames.
+     * The RoiFeed must also wrap the handler, outside of all other wrappers.
+     */
+    public void setRoiFeed(RoiFeed roiFeed) {
+        mRoiFeed = roiFeed;
+    }
+
+    /**
+     * Reports the analysis latency of the scheduler to the ladder, which adjusts the camera frame size. Pass null to keep the size.
+     */
+    public void setResolutionLadder(ResolutionLadder resolutionLadder) {
+        mResolutionLadder = resolutionLadder;
+    }
+
+    /**
+     * Selects the frames that are fed and returned for display. With GRAY only the luminance plane
+     * is used and the camera view skips the color conversion; use it with SDK builds that analyze
+     * single-channel frames, and see CameraBridgeViewBase.setGrayPreviewInterval() for the preview.
+     * @param format CameraBridgeViewBase.RGBA (default) or CameraBridgeViewBase.GRAY
+     */
+    public void setFrameFormat(int format) {
+        if (format != CameraBridgeViewBase.RGBA && format != CameraBridgeViewBase.GRAY) {
+            throw new IllegalArgumentException("Unsupported frame format: " + format);
+        }
+        mFrameFormat = format;
+    }
+
+    @Override
+    public int getFrameFormat() {
+        return mFrameFormat;
+    }
+
+    @Override
+    public void onCameraViewStarted(int width, int height) {
+        mScheduler.reset();
+        ResolutionLadder resolutionLadder = mResolutionLadder;
+        if (resolutionLadder != null) {
+            resolutionLadder.onCameraStarted(SystemClock.elapsedRealtimeNanos(), width, height);
+        }
+        RoiFeed roiFeed = mRoiFeed;
+        if (roiFeed != null) {
+            roiFeed.reset();
+        }
+    }
+
+    @Override
+    public void onCameraViewStopped() {
+        RoiFeed roiFeed = mRoiFeed;
+        if (roiFeed != null) {
+            roiFeed.release();
+        }
+    }
+
+    @Override
+    public Mat onCameraFrame(CameraBridgeViewBase.CvCameraViewFrame inputFrame) {
+        Mat frame = mFrameFormat == CameraBridgeViewBase.GRAY ? inputFrame.gray() : inputFrame.rgba();
+        long now = SystemClock.elapsedRealtimeNanos();
+        ModuleRateController rateController = mRateController;
+        LandmarkFlowTracker landmarkTracker = mLandmarkTracker;
+        if (landmarkTracker != null) {
+            landmarkTracker.track(inputFrame.gray());
+        }
+        // The module rates are only used up by frames that are fed
+        if ((landmarkTracker == null || landmarkTracker.needsDetection())
+                && mScheduler.shouldFeed(now)
+                && (rateController == null || rateController.shouldFeed(now))) {
+            RoiFeed roiFeed = mRoiFeed;
+            ESRC.feed(roiFeed != null ? roiFeed.crop(frame) : frame);
+            mScheduler.onFed(now);
+            if (landmarkTracker != null) {
+                landmarkTracker.onFed();
+            }
+            if (rateController != null) {
+                rateController.onFed(now);
+            }
+        }
+        return frame;
+    }
+
+    private void onResult(long now) {
+        mScheduler.onResult(now);
+        ResolutionLadder resolutionLadder = mResolutionLadder;
+        if (resolutionLadder != null) {
+            resolutionLadder.onResult(now, mScheduler.getAverageLatencyNanos());
+        }
+    }
+}
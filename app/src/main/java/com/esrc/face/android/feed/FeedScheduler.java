@@ -0,0 +1,136 @@
+package com.esrc.face.android.feed;
+
+/**
+ * Decides which camera frames are fed to the ESRC SDK.
+ *
+ * The scheduler measures the end-to-end latency from feeding a frame to receiving its
+ * result and adapts a decimation factor (feed one frame out of N) so that the average
+ * latency stays around the target. It also caps the number of frames in flight, so on
+ * slow devices results do not pile up behind a queue of stale frames.
+ */
+public class FeedScheduler {
+    private static final int MAX_IN_FLIGHT_CAPACITY = 16;
+    private static final int MAX_DECIMATION = 8;
+    private static final int RESULTS_PER_ADJUSTMENT = 8;
+    private static final int EXPIRY_FACTOR = 4;  // Unanswered frames expire after EXPIRY_FACTOR * target latency.
+
+    private final long mTargetLatencyNanos;
+    private final int mMaxInFlight;
+
+    // Feed timestamps of the frames in flight, oldest first.
+    private final long[] mFeedTimes = new long[MAX_IN_FLIGHT_CAPACITY];
+    private int mHead;
+    private int mInFlight;
+
+    private long mAverageLatencyNanos;
+    private int mResultsSinceAdjustment;
+    private int mDecimation = 1;
+    private int mFrameCount;
+    private long mSkippedFrames;
+
+    /**
+     * @param targetLatencyMillis latency between feeding a frame and receiving its result to hold.
+     * @param maxInFlight maximum number of frames fed but not answered yet.
+     */
+    public FeedScheduler(long targetLatencyMillis, int maxInFlight) {
+        if (targetLatencyMillis <= 0) {
+            throw new IllegalArgumentException("targetLatencyMillis must be positive");
+        }
+        if (maxInFlight < 1 || maxInFlight > MAX_IN_FLIGHT_CAPACITY) {
+            throw new IllegalArgumentException("maxInFlight must be in [1, " + MAX_IN_FLIGHT_CAPACITY + "]");
+        }
+        mTargetLatencyNanos = targetLatencyMillis * 1000000L;
+        mMaxInFlight = maxInFlight;
+    }
+
+    /**
+     * Called for every camera frame. Returns whether this frame should be fed.
+     * If it returns true, the caller must feed the frame and call {@link #onFed(long)}.
+     */
+    public synchronized boolean shouldFeed(long nowNanos) {
+        expire(nowNanos);
+        mFrameCount++;
+        if (mFrameCount % mDecimation != 0 || mInFlight >= mMaxInFlight) {
+            mSkippedFrames++;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Records that a frame has been fed.
+     */
+    public synchronized void onFed(long nowNanos) {
+        if (mInFlight == MAX_IN_FLIGHT_CAPACITY) {
+            pop();
+        }
+        mFeedTimes[(mHead + mInFlight) % MAX_IN_FLIGHT_CAPACITY] = nowNanos;
+        mInFlight++;
+    }
+
+    /**
+     * Records that the result of the oldest frame in flight has arrived.
+     * The SDK answers frames in order, so results are matched to feeds first in, first out.
+     */
+    public synchronized void onResult(long nowNanos) {
+        if (mInFlight == 0) {
+            return;
+        }
+        long latency = nowNanos - pop();
+        mAverageLatencyNanos = mAverageLatencyNanos == 0
+                ? latency : mAverageLatencyNanos + (latency - mAverageLatencyNanos) / 8;
+
+        // Adjust the decimation at most once every few results, so the average can settle.
+        if (++mResultsSinceAdjustment >= RESULTS_PER_ADJUSTMENT) {
+            mResultsSinceAdjustment = 0;
+            if (mAverageLatencyNanos > mTargetLatencyNanos && mDecimation < MAX_DECIMATION) {
+                mDecimation++;
+            } else if (mAverageLatencyNanos < mTargetLatencyNanos * 7 / 10 && mDecimation > 1) {
+                mDecimation--;
+            }
+        }
+    }
+
+    /**
+     * Forgets the frames in flight and the statistics, e.g. after the SDK has been restarted.
+     */
+    public synchronized void reset() {
+        mHead = 0;
+        mInFlight = 0;
+        mAverageLatencyNanos = 0;
+        mResultsSinceAdjustment = 0;
+        mDecimation = 1;
+        mFrameCount = 0;
+        mSkippedFrames = 0;
+    }
+
+    public synchronized long getAverageLatencyNanos() {
+        return mAverageLatencyNanos;
+    }
+
+    public synchronized int getDecimation() {
+        return mDecimation;
+    }
+
+    public synchronized int getInFlight() {
+        return mInFlight;
+    }
+
+    public synchronized long getSkippedFrames() {
+        return mSkippedFrames;
+    }
+
+    private long pop() {
+        long feedTime = mFeedTimes[mHead];
+        mHead = (mHead + 1) % MAX_IN_FLIGHT_CAPACITY;
+        mInFlight--;
+        return feedTime;
+    }
+
+    // Frames the SDK never answered (e.g. dropped after an error) would otherwise block the in-flight cap.
+    private void expire(long nowNanos) {
+        while (mInFlight > 0 && nowNanos - mFeedTimes[mHead] > mTargetLatencyNanos * EXPIRY_FACTOR) {
+            pop();
+        }
+    }
+}
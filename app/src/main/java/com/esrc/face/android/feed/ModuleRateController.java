@@ -0,0 +1,199 @@
+package com.esrc.face.android.feed;
+
+import android.os.SystemClock;
+
+import com.esrc.face.android.ForwardingESRCHandler;
+import com.esrc.face.sdk.android.ESRC;
+import com.esrc.face.sdk.android.ESRCException;
+import com.esrc.face.sdk.android.ESRCType;
+
+/**
+ * Per-module analysis rates for the ESRC pipeline.
+ *
+ * ESRCType.Property only switches modules on or off, and the SDK runs every enabled module
+ * on every frame it is fed. This controller limits the work from both ends:
+ * frames are fed no faster than the fastest module needs, modules with a zero rate are
+ * disabled in the Property, and each module's results are passed to the app at most at
+ * its own rate. Between two deliveries the app keeps showing the last result it got.
+ */
+public class ModuleRateController {
+
+    /**
+     * Analysis modules whose results can be rate limited.
+     */
+    public enum Module {
+        MEASURE_ENV,
+        FACE,
+        FACIAL_LANDMARK,
+        FACIAL_ACTION_UNIT,
+        BASIC_FACIAL_EXPRESSION,
+        VALENCE_FACIAL_EXPRESSION,
+        HEAD_POSE,
+        ATTENTION,
+    }
+
+    private static final long NANOS_PER_SECOND = 1000000000L;
+
+    private final long[] mIntervalNanos = new long[Module.values().length];
+    private final long[] mLastDeliveryNanos = new long[Module.values().length];
+    private long mFeedIntervalNanos;
+    private long mLastFeedNanos;
+
+    /**
+     * Creates a controller with the default rates: face 30 Hz, facial landmark and head pose 15 Hz,
+     * facial action unit 10 Hz, basic/valence facial expression and attention 5 Hz, measurement environment 1 Hz.
+     */
+    public ModuleRateController() {
+        setRate(Module.FACE, 30);
+        setRate(Module.FACIAL_LANDMARK, 15);
+        setRate(Module.HEAD_POSE, 15);
+        setRate(Module.FACIAL_ACTION_UNIT, 10);
+        setRate(Module.BASIC_FACIAL_EXPRESSION, 5);
+        setRate(Module.VALENCE_FACIAL_EXPRESSION, 5);
+        setRate(Module.ATTENTION, 5);
+        setRate(Module.MEASURE_ENV, 1);
+    }
+
+    /**
+     * Sets the target rate of a module. A rate of 0 disables the module.
+     */
+    public synchronized ModuleRateController setRate(Module module, float hz) {
+        if (hz < 0) {
+            throw new IllegalArgumentException("Rate must not be negative: " + hz);
+        }
+        mIntervalNanos[module.ordinal()] = hz == 0 ? 0 : (long) (NANOS_PER_SECOND / hz);
+        mLastDeliveryNanos[module.ordinal()] = 0;
+
+        // Frames are fed at the rate of the fastest module.
+        long feedInterval = 0;
+        for (long interval : mIntervalNanos) {
+            if (interval != 0 && (feedInterval == 0 || interval < feedInterval)) {
+                feedInterval = interval;
+            }
+        }
+        mFeedIntervalNanos = feedInterval;
+        return this;
+    }
+
+    public synchronized float getRate(Module module) {
+        long interval = mIntervalNanos[module.ordinal()];
+        return interval == 0 ? 0 : (float) NANOS_PER_SECOND / interval;
+    }
+
+    public synchronized boolean isEnabled(Module module) {
+        return mIntervalNanos[module.ordinal()] != 0;
+    }
+
+    /**
+     * Returns whether a new frame should be fed, i.e. whether the fastest module is due.
+     * If the frame is fed, the caller must call {@link #onFed(long)}.
+     */
+    public synchronized boolean shouldFeed(long nowNanos) {
+        return mFeedIntervalNanos != 0 && nowNanos - mLastFeedNanos >= mFeedIntervalNanos;
+    }
+
+    /**
+     * Records that a frame has been fed, which starts the next feed interval.
+     */
+    public synchronized void onFed(long nowNanos) {
+        mLastFeedNanos = nowNanos;
+    }
+
+    /**
+     * Returns whether a result of the module should be passed on now, and if so marks it delivered.
+     */
+    public synchronized boolean isDue(Module module, long nowNanos) {
+        int i = module.ordinal();
+        if (mIntervalNanos[i] == 0 || nowNanos - mLastDeliveryNanos[i] < mIntervalNanos[i]) {
+            return false;
+        }
+        mLastDeliveryNanos[i] = nowNanos;
+        return true;
+    }
+
+    /**
+     * Builds the Property that enables exactly the modules with a non-zero rate.
+     * Head pose and attention come with the facial landmark module and cannot be switched separately.
+     */
+    public synchronized ESRCType.Property toProperty(boolean enableVisualization) {
+        return new ESRCType.Property(
+                enableVisualization,
+                isEnabled(Module.MEASURE_ENV),
+                isEnabled(Module.FACE),
+                isEnabled(Module.FACIAL_LANDMARK),
+                isEnabled(Module.FACIAL_ACTION_UNIT),
+                isEnabled(Module.BASIC_FACIAL_EXPRESSION),
+                isEnabled(Module.VALENCE_FACIAL_EXPRESSION));
+    }
+
+    /**
+     * Wraps the app's handler so it receives each module's results at most at the module's rate.
+     * Errors are always passed on. A face that is lost is passed on immediately, so the app
+     * can hide the results that depend on it. The results are dropped after the SDK has computed
+     * them, so this alone saves no analysis; feed through shouldFeed() and onFed() and start the SDK with
+     * toProperty() for that.
+     */
+    public ESRC.ESRCHandler wrap(ESRC.ESRCHandler handler) {
+        return new ForwardingESRCHandler(handler) {
+            @Override
+            public void onAnalyzedMeasureEnv(ESRCType.MeasureEnv measureEnv, ESRCException e) {
+                if (e != null || isDue(Module.MEASURE_ENV, now())) {
+                    super.onAnalyzedMeasureEnv(measureEnv, e);
+                }
+            }
+
+            @Override
+            public void onDetectedFace(ESRCType.Face face, ESRCException e) {
+                if (e != null || !face.getIsDetect() || isDue(Module.FACE, now())) {
+                    super.onDetectedFace(face, e);
+                }
+            }
+
+            @Override
+            public void onDetectedFacialLandmark(ESRCType.FacialLandmark facialLandmark, ESRCException e) {
+                if (e != null || isDue(Module.FACIAL_LANDMARK, now())) {
+                    super.onDetectedFacialLandmark(facialLandmark, e);
+                }
+            }
+
+            @Override
+            public void onAnalyzedFacialActionUnit(ESRCType.FacialActionUnit facialActionUnit, ESRCException e) {
+                if (e != null || isDue(Module.FACIAL_ACTION_UNIT, now())) {
+                    super.onAnalyzedFacialActionUnit(facialActionUnit, e);
+                }
+            }
+
+            @Override
+            public void onRecognizedBasicFacialExpression(ESRCType.BasicFacialExpression basicFacialExpression, ESRCException e) {
+                if (e != null || isDue(Module.BASIC_FACIAL_EXPRESSION, now())) {
+                    super.onRecognizedBasicFacialExpression(basicFacialExpression, e);
+                }
+            }
+
+            @Override
+            public void onRecognizedValenceFacialExpression(ESRCType.ValenceFacialExpression valenceFacialExpression, ESRCException e) {
+                if (e != null || isDue(Module.VALENCE_FACIAL_EXPRESSION, now())) {
+                    super.onRecognizedValenceFacialExpression(valenceFacialExpression, e);
+                }
+            }
+
+            @Override
+            public void onEstimatedHeadPose(ESRCType.HeadPose headPose, ESRCException e) {
+                if (e != null || isDue(Module.HEAD_POSE, now())) {
+                    super.onEstimatedHeadPose(headPose, e);
+                }
+            }
+
+            @Override
+            public void onRecognizedAttention(ESRCType.Attention attention, ESRCException e) {
+                if (e != null || isDue(Module.ATTENTION, now())) {
+                    super.onRecognizedAttention(attention, e);
+                }
+            }
+        };
+    }
+
+    private static long now() {
+        return SystemClock.elapsedRealtimeNanos();
+    }
+}
@@ -0,0 +1,196 @@
+package com.esrc.face.android.feed;
+
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.util.Log;
+
+import org.opencv.android.CameraBridgeViewBase;
+
+/**
+ * Picks the camera frame size by the analysis throughput measured on the device.
+ *
+ * The ladder is a list of maximum frame sizes, largest first, applied with
+ * CameraBridgeViewBase.setMaxFrameSize(), so calculateCameraFrameSize() picks the largest
+ * supported size below each rung. The throughput is the rate the SDK could sustain, one frame
+ * per average feed-to-result latency as measured by the FeedScheduler; the rate at which
+ * results arrive is not used, since the scheduler and rate limits hold frames back on purpose.
+ * Without a stored result the ladder calibrates: it steps down until the target rate is
+ * sustained, then stores that rung for the device model. Later launches start at the stored
+ * rung. If the rate drops below the target for two windows in a row at runtime, e.g. because
+ * of thermal throttling, it steps down once more for the rest of the session.
+ */
+public class ResolutionLadder {
+    private static final String TAG = "ResolutionLadder";
+    private static final String KEY_PREFIX = "resolution_ladder_";
+    private static final long NANOS_PER_SECOND = 1000000000L;
+    private static final long WARMUP_NANOS = NANOS_PER_SECOND;
+    private static final long WINDOW_NANOS = 3 * NANOS_PER_SECOND;
+    private static final long RESTART_TIMEOUT_NANOS = 5 * NANOS_PER_SECOND;
+    private static final float RUNTIME_TOLERANCE = 0.8f;
+
+    private final CameraBridgeViewBase mView;
+    private final SharedPreferences mPreferences;
+    private final int[][] mRungs;
+    private final float mTargetFps;
+    private final String mKey;
+
+    // Guarded by this
+    private int mRung;
+    private boolean mCalibrating;
+    private boolean mRestarting;
+    private long mRestartNanos;
+    private long mStartNanos;
+    private long mWindowStartNanos;
+    private int mWindowResults;
+    private long mWindowLatencyNanos;
+    private int mSlowWindows;
+    private int mFrameWidth;
+    private int mFrameHeight;
+
+    /**
+     * @param rungs     maximum frame sizes as {width, height}, largest first
+     * @param targetFps results per second that must be sustained
+     */
+    public ResolutionLadder(CameraBridgeViewBase view, SharedPreferences preferences, int[][] rungs, float targetFps) {
+        if (rungs.length == 0) {
+            throw new IllegalArgumentException("The ladder needs at least one rung");
+        }
+        mView = view;
+        mPreferences = preferences;
+        mRungs = rungs;
+        mTargetFps = targetFps;
+        mKey = KEY_PREFIX + Build.MANUFACTURER + "_" + Build.MODEL;
+
+        String stored = preferences.getString(mKey, null);
+        mRung = indexOf(stored);
+        mCalibrating = mRung < 0;
+        if (mCalibrating) {
+            mRung = 0;
+        }
+        view.setMaxFrameSize(rungs[mRung][0], rungs[mRung][1]);
+    }
+
+    public synchronized boolean isCalibrating() {
+        return mCalibrating;
+    }
+
+    public synchronized int getMaxWidth() {
+        return mRungs[mRung][0];
+    }
+
+    public synchronized int getMaxHeight() {
+        return mRungs[mRung][1];
+    }
+
+    /**
+     * Forgets the stored rung so the next session calibrates again.
+     */
+    public void clearStored() {
+        mPreferences.edit().remove(mKey).apply();
+    }
+
+    /**
+     * Called when the camera has started with the given frame size.
+     */
+    public synchronized void onCameraStarted(long nowNanos, int width, int height) {
+        boolean sameSize = mRestarting && width == mFrameWidth && height == mFrameHeight;
+        mRestarting = false;
+        mFrameWidth = width;
+        mFrameHeight = height;
+        mStartNanos = nowNanos;
+        mWindowStartNanos = 0;
+        mWindowResults = 0;
+        mWindowLatencyNanos = 0;
+        mSlowWindows = 0;
+
+        // A lower rung that yields the same frame size would only repeat the measurement
+        if (sameSize && mCalibrating && mRung < mRungs.length - 1) {
+            stepDown(nowNanos);
+        }
+    }
+
+    /**
+     * Called for every analyzed frame.
+     *
+     * @param latencyNanos average time from feeding a frame to its result, e.g. FeedScheduler.getAverageLatencyNanos()
+     */
+    public synchronized void onResult(long nowNanos, long latencyNanos) {
+        if (mRestarting) {
+            if (nowNanos - mRestartNanos < RESTART_TIMEOUT_NANOS) {
+                return;
+            }
+            // The camera did not come back with a new size, measure the current one again
+            Log.w(TAG, "Camera restart timed out at " + mFrameWidth + "x" + mFrameHeight);
+            mRestarting = false;
+            mStartNanos = nowNanos;
+            mWindowStartNanos = 0;
+        }
+        if (nowNanos - mStartNanos < WARMUP_NANOS || latencyNanos <= 0) {
+            return;
+        }
+        if (mWindowStartNanos == 0) {
+            mWindowStartNanos = nowNanos;
+            mWindowResults = 0;
+            mWindowLatencyNanos = 0;
+            return;
+        }
+
+        mWindowResults++;
+        mWindowLatencyNanos += latencyNanos;
+        if (nowNanos - mWindowStartNanos < WINDOW_NANOS) {
+            return;
+        }
+        float fps = mWindowResults * (float) NANOS_PER_SECOND / mWindowLatencyNanos;
+        mWindowStartNanos = nowNanos;
+        mWindowResults = 0;
+        mWindowLatencyNanos = 0;
+
+        if (mCalibrating) {
+            if (fps >= mTargetFps || mRung == mRungs.length - 1) {
+                Log.i(TAG, "Calibrated " + mFrameWidth + "x" + mFrameHeight + " at " + fps + " fps");
+                mCalibrating = false;
+                mPreferences.edit().putString(mKey, mRungs[mRung][0] + "x" + mRungs[mRung][1]).apply();
+            } else {
+                stepDown(nowNanos);
+            }
+        } else if (fps < RUNTIME_TOLERANCE * mTargetFps) {
+            if (++mSlowWindows >= 2 && mRung < mRungs.length - 1) {
+                Log.i(TAG, "Throughput dropped to " + fps + " fps, stepping down from " + mFrameWidth + "x" + mFrameHeight);
+                stepDown(nowNanos);
+            }
+        } else {
+            mSlowWindows = 0;
+        }
+    }
+
+    /**
+     * Moves to the next smaller rung and restarts the camera. Must be called with the lock held.
+     */
+    private void stepDown(long nowNanos) {
+        mRung++;
+        mRestarting = true;
+        mRestartNanos = nowNanos;
+        final int width = mRungs[mRung][0];
+        final int height = mRungs[mRung][1];
+        mView.post(new Runnable() {
+            @Override
+            public void run() {
+                mView.setMaxFrameSize(width, height);
+                mView.disableView();
+                mView.enableView();
+            }
+        });
+    }
+
+    private int indexOf(String size) {
+        if (size == null) {
+            return -1;
+        }
+        for (int i = 0; i < mRungs.length; i++) {
+            if (size.equals(mRungs[i][0] + "x" + mRungs[i][1])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
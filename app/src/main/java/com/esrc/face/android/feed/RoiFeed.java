@@ -0,0 +1,303 @@
+package com.esrc.face.android.feed;
+
+import com.esrc.face.android.ForwardingESRCHandler;
+import com.esrc.face.android.result.ESRCResults;
+import com.esrc.face.android.result.ResultFrame;
+import com.esrc.face.sdk.android.ESRC;
+import com.esrc.face.sdk.android.ESRCException;
+import com.esrc.face.sdk.android.ESRCType;
+
+import org.opencv.core.Mat;
+
+/**
+ * Feeds only the region around the last detected face instead of the full camera frame.
+ *
+ * Once a face is found, crop() returns a submat of the face box grown by a margin, so the SDK
+ * analyzes far fewer pixels. The results then are in the coordinates of that region: every fed
+ * region is queued, and when the face result of a frame arrives its offset becomes the result
+ * offset, which ResultRing, FaceTracker and LandmarkFlowTracker add back when they are given this
+ * feed. If no face is found in a region, the next frames are fed in full again.
+ *
+ * The SDK answers frames in order but gives no frame identity, so a detected face is matched to
+ * the oldest queued region it fits: the face box must lie within the region, and in a cropped
+ * region it must also be close to the face box the region was grown from, within a tolerance
+ * relative to the region size. Regions before it belong to frames the SDK did not answer and are
+ * dropped; if no region fits, the queue is out of step with the results and the feed starts over
+ * with full frames. A submat that is no longer cropped is released once a frame fed after it has
+ * been answered, since the SDK no longer holds it then; release() frees all of them when the
+ * camera stops.
+ *
+ * The wrapper of this feed must be the outermost one, so the offset is current before the others see a result.
+ */
+public class RoiFeed {
+    private static final int MAX_IN_FLIGHT = 16;
+    // Largest distance of the face box edges from the expected ones, relative to the region size
+    private static final float MATCH_TOLERANCE = 0.25f;
+    // Ints per queued region: the region and the expected face box in frame coordinates, 0 wide if none
+    private static final int REGION_INTS = 8;
+
+    private final float mMargin;
+    private final float mMaxAreaFraction;
+
+    // Regions of the frames fed and not answered yet, oldest first, guarded by this
+    private final int[] mFedRegions = new int[REGION_INTS * MAX_IN_FLIGHT];
+    private final long[] mFedSequences = new long[MAX_IN_FLIGHT];
+    private int mFedHead;
+    private int mFedCount;
+    private long mNextSequence;
+
+    // Submats no longer cropped, with the sequence of the last frame they were fed in, guarded by this
+    private final Mat[] mRetired = new Mat[MAX_IN_FLIGHT];
+    private final long[] mRetiredSequences = new long[MAX_IN_FLIGHT];
+    private int mRetiredHead;
+    private int mRetiredCount;
+
+    // Guarded by this
+    private boolean mLocked;
+    private int mFaceX, mFaceY, mFaceWidth, mFaceHeight;
+    private int mResultOffsetX, mResultOffsetY;
+    private final ResultFrame mScratch = new ResultFrame(0, 0);
+
+    // Guarded by this, set on the camera thread only
+    private Mat mParent;
+    private Mat mRoi;
+    private int mRoiX, mRoiY, mRoiWidth, mRoiHeight;
+
+    /**
+     * @param margin          added on every side of the face box, relative to its larger side, e.g. 0.5
+     * @param maxAreaFraction regions larger than this fraction of the frame are fed in full, e.g. 0.6
+     */
+    public RoiFeed(float margin, float maxAreaFraction) {
+        mMargin = margin;
+        mMaxAreaFraction = maxAreaFraction;
+    }
+
+    /**
+     * Returns the Mat to feed for a frame and queues its region. Call only for frames that are fed.
+     */
+    public Mat crop(Mat frame) {
+        int cols = frame.cols();
+        int rows = frame.rows();
+        int x = 0, y = 0, width = cols, height = rows;
+        boolean cropped = false;
+
+        synchronized (this) {
+            if (mLocked) {
+                int grow = Math.round(mMargin * Math.max(mFaceWidth, mFaceHeight));
+                int left = Math.max(0, mFaceX - grow);
+                int top = Math.max(0, mFaceY - grow);
+                int right = Math.min(cols, mFaceX + mFaceWidth + grow);
+                int bottom = Math.min(rows, mFaceY + mFaceHeight + grow);
+                if (right > left && bottom > top
+                        && (float) (right - left) * (bottom - top) <= mMaxAreaFraction * cols * rows) {
+                    x = left;
+                    y = top;
+                    width = right - left;
+                    height = bottom - top;
+                    cropped = width != cols || height != rows;
+                }
+            }
+            long sequence = cropped
+                    ? enqueue(x, y, width, height, mFaceX, mFaceY, mFaceWidth, mFaceHeight)
+                    : enqueue(x, y, width, height);
+
+            if (!cropped) {
+                return frame;
+            }
+            if (mRoi == null || mParent != frame
+                    || x != mRoiX || y != mRoiY || width != mRoiWidth || height != mRoiHeight) {
+                if (mRoi != null) {
+                    retire(mRoi, sequence - 1);
+                }
+                mRoi = frame.submat(y, y + height, x, x + width);
+                mParent = frame;
+                mRoiX = x;
+                mRoiY = y;
+                mRoiWidth = width;
+                mRoiHeight = height;
+            }
+            return mRoi;
+        }
+    }
+
+    /**
+     * Returns whether frames are currently cropped to a face.
+     */
+    public synchronized boolean isLocked() {
+        return mLocked;
+    }
+
+    /**
+     * Returns the horizontal offset of the region the current results were computed on.
+     */
+    public synchronized int getResultOffsetX() {
+        return mResultOffsetX;
+    }
+
+    /**
+     * Returns the vertical offset of the region the current results were computed on.
+     */
+    public synchronized int getResultOffsetY() {
+        return mResultOffsetY;
+    }
+
+    /**
+     * Clears the queued regions and feeds full frames until a face is found again. The submat
+     * cropped last is released like the others once a frame fed after it has been answered.
+     */
+    public synchronized void reset() {
+        mFedCount = 0;
+        mLocked = false;
+        mResultOffsetX = 0;
+        mResultOffsetY = 0;
+        if (mRoi != null) {
+            retire(mRoi, mNextSequence - 1);
+            mRoi = null;
+        }
+        mParent = null;
+    }
+
+    /**
+     * Resets the feed and releases all submats. Call when no more frames are fed, e.g. when the camera stops.
+     */
+    public synchronized void release() {
+        reset();
+        while (mRetiredCount > 0) {
+            releaseOldestRetired();
+        }
+    }
+
+    /**
+     * Queues the region of a frame fed in full and returns the sequence number of the frame.
+     */
+    synchronized long enqueue(int x, int y, int width, int height) {
+        return enqueue(x, y, width, height, 0, 0, 0, 0);
+    }
+
+    /**
+     * Queues the region of a fed frame and the face box it was cropped around, in frame
+     * coordinates, and returns the sequence number of the frame.
+     */
+    synchronized long enqueue(int x, int y, int width, int height, int faceX, int faceY, int faceWidth, int faceHeight) {
+        // Drop the oldest region if frames are never answered
+        if (mFedCount == MAX_IN_FLIGHT) {
+            mFedHead = (mFedHead + 1) % MAX_IN_FLIGHT;
+            mFedCount--;
+        }
+        int tail = (mFedHead + mFedCount) % MAX_IN_FLIGHT;
+        int i = REGION_INTS * tail;
+        mFedRegions[i] = x;
+        mFedRegions[i + 1] = y;
+        mFedRegions[i + 2] = width;
+        mFedRegions[i + 3] = height;
+        mFedRegions[i + 4] = faceX;
+        mFedRegions[i + 5] = faceY;
+        mFedRegions[i + 6] = faceWidth;
+        mFedRegions[i + 7] = faceHeight;
+        mFedSequences[tail] = mNextSequence;
+        mFedCount++;
+        return mNextSequence++;
+    }
+
+    /**
+     * Handles the face result of a fed frame, given in the coordinates of its region.
+     */
+    synchronized void onFace(boolean detected, int x, int y, int width, int height) {
+        detected = detected && width > 0 && height > 0;
+        int skip = 0;
+        if (detected) {
+            // The oldest region the face fits
+            while (skip < mFedCount && !fits(REGION_INTS * ((mFedHead + skip) % MAX_IN_FLIGHT), x, y, width, height)) {
+                skip++;
+            }
+        }
+        if (mFedCount == 0 || skip == mFedCount) {
+            // No fed frame matches this result
+            reset();
+            return;
+        }
+
+        mFedHead = (mFedHead + skip) % MAX_IN_FLIGHT;
+        mFedCount -= skip;
+        mResultOffsetX = mFedRegions[REGION_INTS * mFedHead];
+        mResultOffsetY = mFedRegions[REGION_INTS * mFedHead + 1];
+        releaseRetired(mFedSequences[mFedHead]);
+        mFedHead = (mFedHead + 1) % MAX_IN_FLIGHT;
+        mFedCount--;
+
+        mLocked = detected;
+        if (mLocked) {
+            mFaceX = x + mResultOffsetX;
+            mFaceY = y + mResultOffsetY;
+            mFaceWidth = width;
+            mFaceHeight = height;
+        }
+    }
+
+    // Whether a face box in region coordinates fits the queued region at index i
+    private boolean fits(int i, int x, int y, int width, int height) {
+        int regionWidth = mFedRegions[i + 2];
+        int regionHeight = mFedRegions[i + 3];
+        float toleranceX = MATCH_TOLERANCE * regionWidth;
+        float toleranceY = MATCH_TOLERANCE * regionHeight;
+        if (x < -toleranceX || y < -toleranceY
+                || x + width > regionWidth + toleranceX || y + height > regionHeight + toleranceY) {
+            return false;
+        }
+        if (mFedRegions[i + 6] == 0) {
+            // Fed in full, any face inside may belong to it
+            return true;
+        }
+        int expectedX = mFedRegions[i + 4] - mFedRegions[i];
+        int expectedY = mFedRegions[i + 5] - mFedRegions[i + 1];
+        return Math.abs(x - expectedX) <= toleranceX
+                && Math.abs(y - expectedY) <= toleranceY
+                && Math.abs(x + width - expectedX - mFedRegions[i + 6]) <= toleranceX
+                && Math.abs(y + height - expectedY - mFedRegions[i + 7]) <= toleranceY;
+    }
+
+    private void retire(Mat roi, long lastSequence) {
+        if (mRetiredCount == MAX_IN_FLIGHT) {
+            // Fed before every frame still in flight, long unanswered
+            releaseOldestRetired();
+        }
+        int tail = (mRetiredHead + mRetiredCount) % MAX_IN_FLIGHT;
+        mRetired[tail] = roi;
+        mRetiredSequences[tail] = lastSequence;
+        mRetiredCount++;
+    }
+
+    // The SDK answers in order, so every frame fed before an answered one is done
+    private void releaseRetired(long answeredSequence) {
+        while (mRetiredCount > 0 && mRetiredSequences[mRetiredHead] < answeredSequence) {
+            releaseOldestRetired();
+        }
+    }
+
+    private void releaseOldestRetired() {
+        mRetired[mRetiredHead].release();
+        mRetired[mRetiredHead] = null;
+        mRetiredHead = (mRetiredHead + 1) % MAX_IN_FLIGHT;
+        mRetiredCount--;
+    }
+
+    /**
+     * Wraps a handler so that every face result moves the region before it is passed on.
+     */
+    public ESRC.ESRCHandler wrap(ESRC.ESRCHandler handler) {
+        return new ForwardingESRCHandler(handler) {
+            @Override
+            public void onDetectedFace(ESRCType.Face face, ESRCException e) {
+                synchronized (RoiFeed.this) {
+                    if (e == null) {
+                        ESRCResults.copyFace(face, mScratch);
+                        onFace(mScratch.faceDetected, mScratch.faceX, mScratch.faceY, mScratch.faceWidth, mScratch.faceHeight);
+                    } else {
+                        onFace(false, 0, 0, 0, 0);
+                    }
+                }
+                super.onDetectedFace(face, e);
+            }
+        };
+    }
+}
@@ -0,0 +1,149 @@
+package com.esrc.face.android.log;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.PrintWriter;
+
+/**
+ * Ring buffer of ESRC results.
+ *
+ * Every result is recorded as a fixed-size entry (timestamp, type, value) into preallocated
+ * arrays, so recording does not build strings or allocate. Only one in every sampleInterval
+ * results of a type is also written to logcat, and only if the tag is loggable at the
+ * configured priority (e.g. adb shell setprop log.tag.MainActivity DEBUG).
+ * The whole ring can be dumped on demand.
+ */
+public class ResultLog {
+    public static final int TYPE_MEASURE_ENV = 0;
+    public static final int TYPE_FACE = 1;
+    public static final int TYPE_FACIAL_LANDMARK = 2;
+    public static final int TYPE_FACIAL_ACTION_UNIT = 3;
+    public static final int TYPE_BASIC_FACIAL_EXPRESSION = 4;
+    public static final int TYPE_VALENCE_FACIAL_EXPRESSION = 5;
+    public static final int TYPE_HEAD_POSE = 6;
+    public static final int TYPE_ATTENTION = 7;
+
+    /** Value of a record that carries no value. */
+    public static final int NO_VALUE = -1;
+
+    private static final String[] TYPE_NAMES = {
+            "MeasureEnv", "Face", "FacialLandmark", "FacialActionUnit",
+            "BasicFacialExpression", "ValenceFacialExpression", "HeadPose", "Attention",
+    };
+    private static final byte ERROR_FLAG = (byte) 0x80;
+
+    private final String mTag;
+    private final int mPriority;
+    private final int mSampleInterval;
+    private final int mMask;
+    private final long[] mTimes;
+    private final byte[] mTypes;
+    private final int[] mValues;
+    private final int[] mTypeCounts = new int[TYPE_NAMES.length];
+    private long mCount;
+
+    /**
+     * @param tag            logcat tag
+     * @param priority       logcat priority of the sampled results, e.g. Log.DEBUG
+     * @param capacity       number of records kept, rounded up to a power of two
+     * @param sampleInterval one in this many results of each type is written to logcat
+     */
+    public ResultLog(String tag, int priority, int capacity, int sampleInterval) {
+        if (capacity < 1 || capacity > (1 << 20)) {
+            throw new IllegalArgumentException("Capacity must be between 1 and 2^20: " + capacity);
+        }
+        if (sampleInterval < 1) {
+            throw new IllegalArgumentException("Sample interval must be positive: " + sampleInterval);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+
+        mTag = tag;
+        mPriority = priority;
+        mSampleInterval = sampleInterval;
+        mMask = size - 1;
+        mTimes = new long[size];
+        mTypes = new byte[size];
+        mValues = new int[size];
+    }
+
+    /**
+     * Records a result.
+     *
+     * @param value  a small value that identifies the result, e.g. a detection flag or
+     *               an emotion ordinal, or NO_VALUE
+     * @param result the result itself; its toString() is only called for sampled results
+     */
+    public void record(int type, int value, Object result) {
+        boolean sampled = put(type, value, false);
+        if (sampled && Log.isLoggable(mTag, mPriority)) {
+            Log.println(mPriority, mTag, TYPE_NAMES[type] + ": " + result);
+        }
+    }
+
+    /**
+     * Records a failed analysis. Errors are always written to logcat.
+     */
+    public void recordError(int type, Exception e) {
+        put(type, NO_VALUE, true);
+        Log.w(mTag, TYPE_NAMES[type] + " failed", e);
+    }
+
+    /**
+     * Returns the number of results recorded so far, including those overwritten.
+     */
+    public synchronized long getCount() {
+        return mCount;
+    }
+
+    /**
+     * Writes the recorded results, oldest first, with their age relative to now.
+     */
+    public void dump(String prefix, PrintWriter writer) {
+        long now = SystemClock.elapsedRealtimeNanos();
+        long[] times;
+        byte[] types;
+        int[] values;
+        long count;
+        synchronized (this) {
+            times = mTimes.clone();
+            types = mTypes.clone();
+            values = mValues.clone();
+            count = mCount;
+        }
+
+        int size = (int) Math.min(count, times.length);
+        writer.print(prefix);
+        writer.println("Results: " + size + " of " + count);
+        for (long i = count - size; i < count; i++) {
+            int idx = (int) i & mMask;
+            boolean error = (types[idx] & ERROR_FLAG) != 0;
+            writer.print(prefix);
+            writer.print("  -");
+            writer.print((now - times[idx]) / 1000000);
+            writer.print("ms ");
+            writer.print(TYPE_NAMES[types[idx] & ~ERROR_FLAG]);
+            if (error) {
+                writer.print(" error");
+            } else if (values[idx] != NO_VALUE) {
+                writer.print(' ');
+                writer.print(values[idx]);
+            }
+            writer.println();
+        }
+    }
+
+    private synchronized boolean put(int type, int value, boolean error) {
+        int idx = (int) mCount & mMask;
+        mTimes[idx] = SystemClock.elapsedRealtimeNanos();
+        mTypes[idx] = (byte) (error ? type | ERROR_FLAG : type);
+        mValues[idx] = value;
+        mCount++;
+        int n = mTypeCounts[type];
+        mTypeCounts[type] = n + 1 == mSampleInterval ? 0 : n + 1;
+        return n == 0;
+    }
+}
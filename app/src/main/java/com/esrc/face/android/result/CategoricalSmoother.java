@@ -0,0 +1,144 @@
+package com.esrc.face.android.result;
+
+/**
+ * Temporal smoothing of a categorical output such as an emotion ordinal or an attention flag.
+ *
+ * Every raw decision updates a score per category, either the vote share over a sliding window
+ * (majority vote) or an exponential moving average of the one-hot decisions. The output is the
+ * best scoring category, with optional hysteresis: a new category only takes over once its score
+ * reaches the enter threshold while the score of the current output has dropped below the exit
+ * threshold. Because the output is stable, the raw decisions may also arrive at a lower rate
+ * without the display flickering more.
+ *
+ * All state lives in fixed-size primitive arrays allocated up front. Not thread-safe.
+ */
+public class CategoricalSmoother {
+    public static final int NONE = -1;
+
+    private final float[] mScores;
+    private final int[] mWindow;
+    private final int[] mCounts;
+    private final float mAlpha;
+    private int mWindowIdx;
+    private int mWindowFilled;
+    private boolean mEmaStarted;
+    private float mEnter = 0f;
+    private float mExit = Float.MAX_VALUE;
+    private int mOutput = NONE;
+
+    private CategoricalSmoother(int categories, int window, float alpha) {
+        if (categories < 1) {
+            throw new IllegalArgumentException("There must be at least one category: " + categories);
+        }
+        mScores = new float[categories];
+        mWindow = window > 0 ? new int[window] : null;
+        mCounts = window > 0 ? new int[categories] : null;
+        mAlpha = alpha;
+    }
+
+    /**
+     * Creates a smoother that votes over the last window decisions.
+     */
+    public static CategoricalSmoother majority(int categories, int window) {
+        if (window < 1) {
+            throw new IllegalArgumentException("Window must be positive: " + window);
+        }
+        return new CategoricalSmoother(categories, window, 0f);
+    }
+
+    /**
+     * Creates a smoother that averages the decisions exponentially.
+     *
+     * @param alpha weight of a new decision, between 0 (exclusive) and 1
+     */
+    public static CategoricalSmoother ema(int categories, float alpha) {
+        if (!(alpha > 0f && alpha <= 1f)) {
+            throw new IllegalArgumentException("Alpha must be in (0, 1]: " + alpha);
+        }
+        return new CategoricalSmoother(categories, 0, alpha);
+    }
+
+    /**
+     * Enables hysteresis. Scores are in [0, 1], so the exit threshold should be below the enter threshold.
+     */
+    public CategoricalSmoother setHysteresis(float enter, float exit) {
+        if (exit > enter) {
+            throw new IllegalArgumentException("Exit threshold " + exit + " is above enter threshold " + enter);
+        }
+        mEnter = enter;
+        mExit = exit;
+        return this;
+    }
+
+    /**
+     * Adds a raw decision and returns the smoothed output. Decisions outside the categories,
+     * e.g. a missing value, leave the state unchanged.
+     */
+    public int update(int category) {
+        if (category < 0 || category >= mScores.length) {
+            return mOutput;
+        }
+
+        if (mWindow != null) {
+            if (mWindowFilled == mWindow.length) {
+                mCounts[mWindow[mWindowIdx]]--;
+            } else {
+                mWindowFilled++;
+            }
+            mWindow[mWindowIdx] = category;
+            mCounts[category]++;
+            mWindowIdx = (mWindowIdx + 1) % mWindow.length;
+            for (int i = 0; i < mScores.length; i++) {
+                mScores[i] = (float) mCounts[i] / mWindowFilled;
+            }
+        } else if (!mEmaStarted) {
+            // Start the average at the first decision
+            mScores[category] = 1f;
+            mEmaStarted = true;
+        } else {
+            for (int i = 0; i < mScores.length; i++) {
+                mScores[i] += mAlpha * ((i == category ? 1f : 0f) - mScores[i]);
+            }
+        }
+
+        // Ties keep the current output
+        int best = mOutput;
+        for (int i = 0; i < mScores.length; i++) {
+            if (best == NONE || mScores[i] > mScores[best]) {
+                best = i;
+            }
+        }
+
+        if (mOutput == NONE) {
+            if (mScores[best] >= mEnter) {
+                mOutput = best;
+            }
+        } else if (best != mOutput && mScores[best] >= mEnter && mScores[mOutput] < mExit) {
+            mOutput = best;
+        }
+        return mOutput;
+    }
+
+    public int getOutput() {
+        return mOutput;
+    }
+
+    public float getScore(int category) {
+        return mScores[category];
+    }
+
+    public void reset() {
+        for (int i = 0; i < mScores.length; i++) {
+            mScores[i] = 0f;
+        }
+        if (mCounts != null) {
+            for (int i = 0; i < mCounts.length; i++) {
+                mCounts[i] = 0;
+            }
+        }
+        mWindowIdx = 0;
+        mWindowFilled = 0;
+        mEmaStarted = false;
+        mOutput = NONE;
+    }
+}
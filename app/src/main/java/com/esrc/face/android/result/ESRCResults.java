@@ -0,0 +1,57 @@
+package com.esrc.face.android.result;
+
+import com.esrc.face.sdk.android.ESRCType;
+
+/**
+ * Copies ESRC result objects into ResultFrames.
+ *
+ * This is the only place that reads the coordinate, intensity and angle getters of the
+ * SDK result types, so an SDK update that changes them only needs to be followed here.
+ */
+public final class ESRCResults {
+
+    private ESRCResults() {
+    }
+
+    public static void copyFace(ESRCType.Face face, ResultFrame dst) {
+        if (face.getIsDetect()) {
+            dst.setFace(true, face.getX(), face.getY(), face.getW(), face.getH());
+        } else {
+            dst.setFace(false, 0, 0, 0, 0);
+        }
+    }
+
+    public static void copyFacialLandmark(ESRCType.FacialLandmark facialLandmark, ResultFrame dst) {
+        if (facialLandmark.getIsDetect()) {
+            dst.setLandmarks(true, facialLandmark.getX(), facialLandmark.getY());
+        } else {
+            dst.setLandmarks(false, null, null);
+        }
+    }
+
+    public static void copyFacialActionUnit(ESRCType.FacialActionUnit facialActionUnit, ResultFrame dst) {
+        if (facialActionUnit.getIsDetect()) {
+            dst.setActionUnits(true, facialActionUnit.getIntensity());
+        } else {
+            dst.setActionUnits(false, null);
+        }
+    }
+
+    public static void copyHeadPose(ESRCType.HeadPose headPose, ResultFrame dst) {
+        if (headPose.getIsDetect()) {
+            dst.setHeadPose(true, headPose.getYaw(), headPose.getPitch(), headPose.getRoll());
+        } else {
+            dst.setHeadPose(false, 0, 0, 0);
+        }
+    }
+
+    public static int basicEmotion(ESRCType.BasicFacialExpression basicFacialExpression) {
+        ESRCType.BasicFacialExpression.Emotion emotion = basicFacialExpression.getEmotion();
+        return emotion != null ? emotion.ordinal() : ResultFrame.NO_EMOTION;
+    }
+
+    public static int valenceEmotion(ESRCType.ValenceFacialExpression valenceFacialExpression) {
+        ESRCType.ValenceFacialExpression.Emotion emotion = valenceFacialExpression.getEmotion();
+        return emotion != null ? emotion.ordinal() : ResultFrame.NO_EMOTION;
+    }
+}
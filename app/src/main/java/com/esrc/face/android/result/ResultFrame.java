@@ -0,0 +1,154 @@
+package com.esrc.face.android.result;
+
+/**
+ * Primitive copy of the results of one analyzed frame.
+ *
+ * Instances are preallocated by a ResultRing and reused, so the fields are public and
+ * mutable like a C struct. Values whose callback has not arrived for the frame keep
+ * their cleared state (not detected, NO_EMOTION, NO_ATTENTION).
+ */
+public final class ResultFrame {
+    public static final int NO_EMOTION = -1;
+    public static final int NO_ATTENTION = -1;
+
+    public long timestampNanos;
+
+    // Face box
+    public boolean faceDetected;
+    public int faceX;
+    public int faceY;
+    public int faceWidth;
+    public int faceHeight;
+
+    // Facial landmark
+    public boolean landmarkDetected;
+    public int landmarkCount;
+    public final float[] landmarkX;
+    public final float[] landmarkY;
+
+    // Facial action unit
+    public boolean actionUnitDetected;
+    public int actionUnitCount;
+    public final float[] actionUnitIntensity;
+
+    // Head pose
+    public boolean headPoseDetected;
+    public float yaw;
+    public float pitch;
+    public float roll;
+
+    // Emotion ordinals and attention (1 attends, 0 does not)
+    public int basicEmotion;
+    public int valenceEmotion;
+    public int attention;
+
+    public ResultFrame(int maxLandmarks, int maxActionUnits) {
+        landmarkX = new float[maxLandmarks];
+        landmarkY = new float[maxLandmarks];
+        actionUnitIntensity = new float[maxActionUnits];
+        clear();
+    }
+
+    public void clear() {
+        timestampNanos = 0;
+        faceDetected = false;
+        faceX = faceY = faceWidth = faceHeight = 0;
+        landmarkDetected = false;
+        landmarkCount = 0;
+        actionUnitDetected = false;
+        actionUnitCount = 0;
+        headPoseDetected = false;
+        yaw = pitch = roll = 0;
+        basicEmotion = NO_EMOTION;
+        valenceEmotion = NO_EMOTION;
+        attention = NO_ATTENTION;
+    }
+
+    public void setFace(boolean detected, int x, int y, int width, int height) {
+        faceDetected = detected;
+        faceX = x;
+        faceY = y;
+        faceWidth = width;
+        faceHeight = height;
+    }
+
+    /**
+     * Copies the landmark coordinates, truncated to the capacity of this frame.
+     */
+    public void setLandmarks(boolean detected, double[] x, double[] y) {
+        landmarkDetected = detected;
+        int count = 0;
+        if (detected && x != null && y != null) {
+            count = Math.min(Math.min(x.length, y.length), landmarkX.length);
+            for (int i = 0; i < count; i++) {
+                landmarkX[i] = (float) x[i];
+                landmarkY[i] = (float) y[i];
+            }
+        }
+        landmarkCount = count;
+    }
+
+    /**
+     * Moves the face box, e.g. from the coordinates of a cropped region into those of the full frame.
+     */
+    public void offsetFace(int dx, int dy) {
+        if (faceDetected) {
+            faceX += dx;
+            faceY += dy;
+        }
+    }
+
+    /**
+     * Moves the landmarks, e.g. from the coordinates of a cropped region into those of the full frame.
+     */
+    public void offsetLandmarks(float dx, float dy) {
+        for (int i = 0; i < landmarkCount; i++) {
+            landmarkX[i] += dx;
+            landmarkY[i] += dy;
+        }
+    }
+
+    /**
+     * Copies the action unit intensities, truncated to the capacity of this frame.
+     */
+    public void setActionUnits(boolean detected, double[] intensity) {
+        actionUnitDetected = detected;
+        int count = 0;
+        if (detected && intensity != null) {
+            count = Math.min(intensity.length, actionUnitIntensity.length);
+            for (int i = 0; i < count; i++) {
+                actionUnitIntensity[i] = (float) intensity[i];
+            }
+        }
+        actionUnitCount = count;
+    }
+
+    public void setHeadPose(boolean detected, double yaw, double pitch, double roll) {
+        headPoseDetected = detected;
+        this.yaw = (float) yaw;
+        this.pitch = (float) pitch;
+        this.roll = (float) roll;
+    }
+
+    /**
+     * Copies this frame into another one. Arrays are copied up to the smaller capacity.
+     */
+    public void copyTo(ResultFrame dst) {
+        dst.timestampNanos = timestampNanos;
+        dst.setFace(faceDetected, faceX, faceY, faceWidth, faceHeight);
+        dst.landmarkDetected = landmarkDetected;
+        dst.landmarkCount = Math.min(landmarkCount, dst.landmarkX.length);
+        System.arraycopy(landmarkX, 0, dst.landmarkX, 0, dst.landmarkCount);
+        System.arraycopy(landmarkY, 0, dst.landmarkY, 0, dst.landmarkCount);
+        dst.actionUnitDetected = actionUnitDetected;
+        dst.actionUnitCount = Math.min(actionUnitCount, dst.actionUnitIntensity.length);
+        System.arraycopy(actionUnitIntensity, 0, dst.actionUnitIntensity, 0, dst.actionUnitCount);
+        dst.headPoseDetected = headPoseDetected;
+        dst.yaw = yaw;
+        dst.pitch = pitch;
+        dst.roll = roll;
+        dst.basicEmotion = basicEmotion;
+        dst.valenceEmotion = valenceEmotion;
+        dst.attention = attention;
+    }
+}
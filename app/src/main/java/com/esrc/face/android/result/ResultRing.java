@@ -0,0 +1,197 @@
+package com.esrc.face.android.result;
+
+import android.os.SystemClock;
+
+import com.esrc.face.android.ForwardingESRCHandler;
+import com.esrc.face.android.feed.RoiFeed;
+import com.esrc.face.sdk.android.ESRC;
+import com.esrc.face.sdk.android.ESRCException;
+import com.esrc.face.sdk.android.ESRCType;
+
+/**
+ * Ring of preallocated ResultFrames that the ESRC results are copied into.
+ *
+ * A new frame is started by every face result, and the other results of the same analyzed
+ * frame are copied into it. Once the ring is full the oldest frame is cleared and reused,
+ * so recording does not allocate no matter how long a session runs. Readers copy frames
+ * out with copy(), which is safe from any thread.
+ */
+public class ResultRing {
+    private final ResultFrame[] mFrames;
+    private final int mMask;
+    private long mCount;
+    private volatile RoiFeed mRoiFeed;
+
+    /**
+     * @param capacity       number of frames kept, rounded up to a power of two
+     * @param maxLandmarks   landmarks kept per frame
+     * @param maxActionUnits action unit intensities kept per frame
+     */
+    public ResultRing(int capacity, int maxLandmarks, int maxActionUnits) {
+        if (capacity < 1 || capacity > (1 << 16)) {
+            throw new IllegalArgumentException("Capacity must be between 1 and 2^16: " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+
+        mFrames = new ResultFrame[size];
+        for (int i = 0; i < size; i++) {
+            mFrames[i] = new ResultFrame(maxLandmarks, maxActionUnits);
+        }
+        mMask = size - 1;
+    }
+
+    public int capacity() {
+        return mFrames.length;
+    }
+
+    /**
+     * Returns the number of frames that can be copied.
+     */
+    public synchronized int size() {
+        return (int) Math.min(mCount, mFrames.length);
+    }
+
+    /**
+     * Returns the number of frames started so far, including those overwritten.
+     */
+    public synchronized long getCount() {
+        return mCount;
+    }
+
+    /**
+     * Copies a frame out of the ring.
+     *
+     * @param age 0 for the newest frame, which may still be receiving results, 1 for the one before, ...
+     * @return false if there is no such frame
+     */
+    public synchronized boolean copy(int age, ResultFrame dst) {
+        if (age < 0 || age >= size()) {
+            return false;
+        }
+        mFrames[(int) (mCount - 1 - age) & mMask].copyTo(dst);
+        return true;
+    }
+
+    public synchronized void clear() {
+        mCount = 0;
+    }
+
+    /**
+     * Moves the face box and landmarks into full-frame coordinates when the frames are fed through the given RoiFeed.
+     */
+    public void setRoiFeed(RoiFeed roiFeed) {
+        mRoiFeed = roiFeed;
+    }
+
+    /**
+     * Starts a new frame and returns it. Must be called with the lock held.
+     */
+    ResultFrame beginFrame(long timestampNanos) {
+        ResultFrame frame = mFrames[(int) mCount & mMask];
+        frame.clear();
+        frame.timestampNanos = timestampNanos;
+        mCount++;
+        return frame;
+    }
+
+    /**
+     * Returns the newest frame, starting one if there is none yet. Must be called with the lock held.
+     */
+    ResultFrame currentFrame(long timestampNanos) {
+        return mCount == 0 ? beginFrame(timestampNanos) : mFrames[(int) (mCount - 1) & mMask];
+    }
+
+    /**
+     * Wraps a handler so that every result is copied into this ring before it is passed on.
+     */
+    public ESRC.ESRCHandler wrap(ESRC.ESRCHandler handler) {
+        return new ForwardingESRCHandler(handler) {
+            @Override
+            public void onDetectedFace(ESRCType.Face face, ESRCException e) {
+                if (e == null) {
+                    synchronized (ResultRing.this) {
+                        ResultFrame frame = beginFrame(now());
+                        ESRCResults.copyFace(face, frame);
+                        RoiFeed roiFeed = mRoiFeed;
+                        if (roiFeed != null) {
+                            frame.offsetFace(roiFeed.getResultOffsetX(), roiFeed.getResultOffsetY());
+                        }
+                    }
+                }
+                super.onDetectedFace(face, e);
+            }
+
+            @Override
+            public void onDetectedFacialLandmark(ESRCType.FacialLandmark facialLandmark, ESRCException e) {
+                if (e == null) {
+                    synchronized (ResultRing.this) {
+                        ResultFrame frame = currentFrame(now());
+                        ESRCResults.copyFacialLandmark(facialLandmark, frame);
+                        RoiFeed roiFeed = mRoiFeed;
+                        if (roiFeed != null) {
+                            frame.offsetLandmarks(roiFeed.getResultOffsetX(), roiFeed.getResultOffsetY());
+                        }
+                    }
+                }
+                super.onDetectedFacialLandmark(facialLandmark, e);
+            }
+
+            @Override
+            public void onAnalyzedFacialActionUnit(ESRCType.FacialActionUnit facialActionUnit, ESRCException e) {
+                if (e == null) {
+                    synchronized (ResultRing.this) {
+                        ESRCResults.copyFacialActionUnit(facialActionUnit, currentFrame(now()));
+                    }
+                }
+                super.onAnalyzedFacialActionUnit(facialActionUnit, e);
+            }
+
+            @Override
+            public void onRecognizedBasicFacialExpression(ESRCType.BasicFacialExpression basicFacialExpression, ESRCException e) {
+                if (e == null) {
+                    synchronized (ResultRing.this) {
+                        currentFrame(now()).basicEmotion = ESRCResults.basicEmotion(basicFacialExpression);
+                    }
+                }
+                super.onRecognizedBasicFacialExpression(basicFacialExpression, e);
+            }
+
+            @Override
+            public void onRecognizedValenceFacialExpression(ESRCType.ValenceFacialExpression valenceFacialExpression, ESRCException e) {
+                if (e == null) {
+                    synchronized (ResultRing.this) {
+                        currentFrame(now()).valenceEmotion = ESRCResults.valenceEmotion(valenceFacialExpression);
+                    }
+                }
+                super.onRecognizedValenceFacialExpression(valenceFacialExpression, e);
+            }
+
+            @Override
+            public void onEstimatedHeadPose(ESRCType.HeadPose headPose, ESRCException e) {
+                if (e == null) {
+                    synchronized (ResultRing.this) {
+                        ESRCResults.copyHeadPose(headPose, currentFrame(now()));
+                    }
+                }
+                super.onEstimatedHeadPose(headPose, e);
+            }
+
+            @Override
+            public void onRecognizedAttention(ESRCType.Attention attention, ESRCException e) {
+                if (e == null) {
+                    synchronized (ResultRing.this) {
+                        currentFrame(now()).attention = attention.getIsAttend() ? 1 : 0;
+                    }
+                }
+                super.onRecognizedAttention(attention, e);
+            }
+        };
+    }
+
+    private static long now() {
+        return SystemClock.elapsedRealtimeNanos();
+    }
+}
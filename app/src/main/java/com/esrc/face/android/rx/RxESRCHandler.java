@@ -0,0 +1,221 @@
+package com.esrc.face.android.rx;
+
+import com.esrc.face.sdk.android.ESRC;
+import com.esrc.face.sdk.android.ESRCException;
+import com.esrc.face.sdk.android.ESRCType;
+
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.rxjava3.core.BackpressureOverflowStrategy;
+import io.reactivex.rxjava3.core.Flowable;
+import io.reactivex.rxjava3.core.Scheduler;
+import io.reactivex.rxjava3.processors.FlowableProcessor;
+import io.reactivex.rxjava3.processors.PublishProcessor;
+
+/**
+ * ESRC handler that exposes every callback as a Flowable.
+ *
+ * The callbacks only hand the result to a processor, so the SDK's callback thread is never
+ * blocked by a consumer. Each stream applies the configured Backpressure and then delivers
+ * on the configured Scheduler. Successful results and errors are published on separate
+ * streams; an error does not terminate the result streams.
+ */
+public class RxESRCHandler implements ESRC.ESRCHandler {
+
+    /**
+     * How a stream treats results that arrive faster than its consumer takes them.
+     */
+    public abstract static class Backpressure {
+
+        /**
+         * Keeps only the newest result while the consumer is busy.
+         */
+        public static Backpressure latest() {
+            return new Latest();
+        }
+
+        /**
+         * Emits the newest result once per period and drops the others.
+         */
+        public static Backpressure sample(long period, TimeUnit unit) {
+            if (period <= 0) {
+                throw new IllegalArgumentException("Period must be positive: " + period);
+            }
+            return new Sample(period, unit);
+        }
+
+        /**
+         * Buffers up to capacity results and drops the oldest one when the buffer is full.
+         */
+        public static Backpressure buffer(int capacity) {
+            if (capacity <= 0) {
+                throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+            }
+            return new Buffer(capacity);
+        }
+
+        abstract <T> Flowable<T> apply(Flowable<T> upstream, Scheduler scheduler);
+    }
+
+    private static class Latest extends Backpressure {
+        @Override
+        <T> Flowable<T> apply(Flowable<T> upstream, Scheduler scheduler) {
+            // A prefetch of 1 keeps observeOn from queueing stale results
+            return upstream.onBackpressureLatest().observeOn(scheduler, false, 1);
+        }
+    }
+
+    private static class Sample extends Backpressure {
+        private final long mPeriod;
+        private final TimeUnit mUnit;
+
+        Sample(long period, TimeUnit unit) {
+            mPeriod = period;
+            mUnit = unit;
+        }
+
+        @Override
+        <T> Flowable<T> apply(Flowable<T> upstream, Scheduler scheduler) {
+            return upstream.sample(mPeriod, mUnit).onBackpressureLatest().observeOn(scheduler, false, 1);
+        }
+    }
+
+    private static class Buffer extends Backpressure {
+        private final int mCapacity;
+
+        Buffer(int capacity) {
+            mCapacity = capacity;
+        }
+
+        @Override
+        <T> Flowable<T> apply(Flowable<T> upstream, Scheduler scheduler) {
+            return upstream.onBackpressureBuffer(mCapacity, null, BackpressureOverflowStrategy.DROP_OLDEST)
+                    .observeOn(scheduler, false, Math.min(mCapacity, Flowable.bufferSize()));
+        }
+    }
+
+    private final FlowableProcessor<ESRCType.MeasureEnv> mMeasureEnvs = PublishProcessor.<ESRCType.MeasureEnv>create().toSerialized();
+    private final FlowableProcessor<ESRCType.Face> mFaces = PublishProcessor.<ESRCType.Face>create().toSerialized();
+    private final FlowableProcessor<ESRCType.FacialLandmark> mFacialLandmarks = PublishProcessor.<ESRCType.FacialLandmark>create().toSerialized();
+    private final FlowableProcessor<ESRCType.FacialActionUnit> mFacialActionUnits = PublishProcessor.<ESRCType.FacialActionUnit>create().toSerialized();
+    private final FlowableProcessor<ESRCType.BasicFacialExpression> mBasicFacialExpressions = PublishProcessor.<ESRCType.BasicFacialExpression>create().toSerialized();
+    private final FlowableProcessor<ESRCType.ValenceFacialExpression> mValenceFacialExpressions = PublishProcessor.<ESRCType.ValenceFacialExpression>create().toSerialized();
+    private final FlowableProcessor<ESRCType.HeadPose> mHeadPoses = PublishProcessor.<ESRCType.HeadPose>create().toSerialized();
+    private final FlowableProcessor<ESRCType.Attention> mAttentions = PublishProcessor.<ESRCType.Attention>create().toSerialized();
+    private final FlowableProcessor<ESRCException> mErrors = PublishProcessor.<ESRCException>create().toSerialized();
+
+    private final Backpressure mBackpressure;
+    private final Scheduler mScheduler;
+
+    /**
+     * @param backpressure applied to every stream
+     * @param scheduler    the streams deliver on, e.g. AndroidSchedulers.mainThread() or Schedulers.computation()
+     */
+    public RxESRCHandler(Backpressure backpressure, Scheduler scheduler) {
+        mBackpressure = backpressure;
+        mScheduler = scheduler;
+    }
+
+    public Flowable<ESRCType.MeasureEnv> measureEnvs() {
+        return mBackpressure.apply(mMeasureEnvs, mScheduler);
+    }
+
+    public Flowable<ESRCType.Face> faces() {
+        return mBackpressure.apply(mFaces, mScheduler);
+    }
+
+    public Flowable<ESRCType.FacialLandmark> facialLandmarks() {
+        return mBackpressure.apply(mFacialLandmarks, mScheduler);
+    }
+
+    public Flowable<ESRCType.FacialActionUnit> facialActionUnits() {
+        return mBackpressure.apply(mFacialActionUnits, mScheduler);
+    }
+
+    public Flowable<ESRCType.BasicFacialExpression> basicFacialExpressions() {
+        return mBackpressure.apply(mBasicFacialExpressions, mScheduler);
+    }
+
+    public Flowable<ESRCType.ValenceFacialExpression> valenceFacialExpressions() {
+        return mBackpressure.apply(mValenceFacialExpressions, mScheduler);
+    }
+
+    public Flowable<ESRCType.HeadPose> headPoses() {
+        return mBackpressure.apply(mHeadPoses, mScheduler);
+    }
+
+    public Flowable<ESRCType.Attention> attentions() {
+        return mBackpressure.apply(mAttentions, mScheduler);
+    }
+
+    /**
+     * Returns the errors of all callbacks. Errors are buffered rather than dropped.
+     */
+    public Flowable<ESRCException> errors() {
+        return mErrors.onBackpressureBuffer(Flowable.bufferSize(), null, BackpressureOverflowStrategy.DROP_OLDEST)
+                .observeOn(mScheduler, false, Flowable.bufferSize());
+    }
+
+    /**
+     * Completes all streams. Call after ESRC.stop().
+     */
+    public void complete() {
+        mMeasureEnvs.onComplete();
+        mFaces.onComplete();
+        mFacialLandmarks.onComplete();
+        mFacialActionUnits.onComplete();
+        mBasicFacialExpressions.onComplete();
+        mValenceFacialExpressions.onComplete();
+        mHeadPoses.onComplete();
+        mAttentions.onComplete();
+        mErrors.onComplete();
+    }
+
+    @Override
+    public void onAnalyzedMeasureEnv(ESRCType.MeasureEnv measureEnv, ESRCException e) {
+        publish(mMeasureEnvs, measureEnv, e);
+    }
+
+    @Override
+    public void onDetectedFace(ESRCType.Face face, ESRCException e) {
+        publish(mFaces, face, e);
+    }
+
+    @Override
+    public void onDetectedFacialLandmark(ESRCType.FacialLandmark facialLandmark, ESRCException e) {
+        publish(mFacialLandmarks, facialLandmark, e);
+    }
+
+    @Override
+    public void onAnalyzedFacialActionUnit(ESRCType.FacialActionUnit facialActionUnit, ESRCException e) {
+        publish(mFacialActionUnits, facialActionUnit, e);
+    }
+
+    @Override
+    public void onRecognizedBasicFacialExpression(ESRCType.BasicFacialExpression basicFacialExpression, ESRCException e) {
+        publish(mBasicFacialExpressions, basicFacialExpression, e);
+    }
+
+    @Override
+    public void onRecognizedValenceFacialExpression(ESRCType.ValenceFacialExpression valenceFacialExpression, ESRCException e) {
+        publish(mValenceFacialExpressions, valenceFacialExpression, e);
+    }
+
+    @Override
+    public void onEstimatedHeadPose(ESRCType.HeadPose headPose, ESRCException e) {
+        publish(mHeadPoses, headPose, e);
+    }
+
+    @Override
+    public void onRecognizedAttention(ESRCType.Attention attention, ESRCException e) {
+        publish(mAttentions, attention, e);
+    }
+
+    private <T> void publish(FlowableProcessor<T> processor, T result, ESRCException e) {
+        if (e != null) {
+            mErrors.onNext(e);
+        } else if (result != null) {
+            processor.onNext(result);
+        }
+    }
+}
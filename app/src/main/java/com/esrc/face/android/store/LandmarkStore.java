@@ -0,0 +1,692 @@
+package com.esrc.face.android.store;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.esrc.face.android.ForwardingESRCHandler;
+import com.esrc.face.android.feed.RoiFeed;
+import com.esrc.face.android.result.ESRCResults;
+import com.esrc.face.android.result.ResultFrame;
+import com.esrc.face.sdk.android.ESRC;
+import com.esrc.face.sdk.android.ESRCException;
+import com.esrc.face.sdk.android.ESRCType;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Append-only, columnar store of facial landmarks and action unit intensities on disk.
+ *
+ * Rows are written through a memory-mapped chunk file of a fixed number of rows. A chunk has
+ * a timestamp column, a column with the landmark and action unit counts, and one float column
+ * per landmark x, landmark y and action unit, so a single series can be read without touching
+ * the others. Missing values are NaN. When a chunk is full the next one is created, and beyond
+ * maxChunks the oldest chunk file is deleted, so neither heap nor disk usage grows with the
+ * length of a session. Chunks left in the directory by earlier sessions are read on opening.
+ *
+ * The file work of a rotation is kept off the appending thread: a background thread creates and
+ * maps the next chunk ahead of time under a spare name, writes finished chunks to disk and deletes
+ * the oldest ones. Appending only renames the spare chunk, and creates it in place if the
+ * background thread has not finished it yet. Each chunk is mapped at most once and the mapping
+ * is kept for reads until the chunk is deleted, so the mapped size is bounded by maxChunks.
+ *
+ * Timestamps must not decrease; a smaller one is stored as the previous timestamp. Range scans
+ * skip whole chunks by their first and last timestamps and binary search the rows inside.
+ */
+public class LandmarkStore implements Closeable {
+    private static final String TAG = "LandmarkStore";
+
+    // Chunk file layout, little endian
+    private static final int MAGIC = 0x4D4C5345;  // "ESLM"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int OFFSET_MAGIC = 0;
+    private static final int OFFSET_VERSION = 4;
+    private static final int OFFSET_LANDMARKS = 8;
+    private static final int OFFSET_ACTION_UNITS = 12;
+    private static final int OFFSET_ROWS_PER_CHUNK = 16;
+    private static final int OFFSET_ROW_COUNT = 20;
+    private static final int OFFSET_FIRST_TIMESTAMP = 24;
+    private static final int OFFSET_LAST_TIMESTAMP = 32;
+    private static final String CHUNK_PREFIX = "chunk-";
+    private static final String CHUNK_SUFFIX = ".lms";
+    private static final String SPARE_NAME = "spare.tmp";
+    private static final long CLOSE_TIMEOUT_SECONDS = 10;
+
+    private final File mDirectory;
+    private final int mMaxLandmarks;
+    private final int mMaxActionUnits;
+    private final int mRowsPerChunk;
+    private final int mColumnCount;
+    private final int mChunkSize;
+    private final ExecutorService mBackground;
+    private final StringBuilder mName = new StringBuilder();
+
+    // Chunks from the oldest to the newest, in a ring of maxChunks entries
+    private final Chunk[] mChunks;
+    private int mFirstChunk;
+    private int mChunkCount;
+    private long mNextSequence;
+    private Chunk mWriting;
+    // Next chunk, created and mapped by the background thread
+    private Future<MappedByteBuffer> mSpare;
+    private long mLastTimestamp = Long.MIN_VALUE;
+    private boolean mClosed;
+
+    // Row assembled by wrap() until the next face result
+    private final ResultFrame mPending;
+    private boolean mHasPending;
+    private boolean mFailed;
+    private volatile RoiFeed mRoiFeed;
+
+    /**
+     * Opens the store in a directory, which is created with the first chunk if needed.
+     *
+     * @param maxLandmarks   landmarks stored per row
+     * @param maxActionUnits action unit intensities stored per row
+     * @param rowsPerChunk   rows of one chunk file, e.g. 3600 for one minute at 60 fps
+     * @param maxChunks      number of chunk files kept
+     */
+    public LandmarkStore(File directory, int maxLandmarks, int maxActionUnits, int rowsPerChunk, int maxChunks)
+            throws IOException {
+        if (maxLandmarks < 0 || maxLandmarks > 0xffff || maxActionUnits < 0 || maxActionUnits > 0xffff) {
+            throw new IllegalArgumentException("Column counts must be between 0 and 65535");
+        }
+        if (rowsPerChunk < 1 || maxChunks < 1) {
+            throw new IllegalArgumentException("Chunk sizes must be positive: " + rowsPerChunk + ", " + maxChunks);
+        }
+        long chunkSize = HEADER_SIZE + (long) rowsPerChunk * (8 + 4 + 4L * (2 * maxLandmarks + maxActionUnits));
+        if (chunkSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Chunk of " + chunkSize + " bytes is too large");
+        }
+
+        mDirectory = directory;
+        mMaxLandmarks = maxLandmarks;
+        mMaxActionUnits = maxActionUnits;
+        mRowsPerChunk = rowsPerChunk;
+        mColumnCount = 2 * maxLandmarks + maxActionUnits;
+        mChunkSize = (int) chunkSize;
+        mChunks = new Chunk[maxChunks];
+        mPending = new ResultFrame(maxLandmarks, maxActionUnits);
+        mBackground = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, TAG);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        try {
+            openExisting();
+        } catch (IOException e) {
+            mBackground.shutdown();
+            throw e;
+        }
+        prepareSpare();
+    }
+
+    /**
+     * Returns the number of float columns.
+     */
+    public int getColumnCount() {
+        return mColumnCount;
+    }
+
+    public int landmarkXColumn(int index) {
+        return checkIndex(index, mMaxLandmarks);
+    }
+
+    public int landmarkYColumn(int index) {
+        return mMaxLandmarks + checkIndex(index, mMaxLandmarks);
+    }
+
+    public int actionUnitColumn(int index) {
+        return 2 * mMaxLandmarks + checkIndex(index, mMaxActionUnits);
+    }
+
+    /**
+     * Returns the number of rows in the chunks kept.
+     */
+    public synchronized long getRowCount() {
+        long rows = 0;
+        for (int i = 0; i < mChunkCount; i++) {
+            rows += chunkAt(i).rows;
+        }
+        return rows;
+    }
+
+    /**
+     * Returns the number of chunk files kept.
+     */
+    public synchronized int getChunkCount() {
+        return mChunkCount;
+    }
+
+    /**
+     * Moves the landmarks recorded by wrap() into full-frame coordinates when the frames are fed through the given RoiFeed.
+     */
+    public void setRoiFeed(RoiFeed roiFeed) {
+        mRoiFeed = roiFeed;
+    }
+
+    /**
+     * Appends the landmarks and action units of a frame as one row.
+     */
+    public synchronized void append(ResultFrame frame) throws IOException {
+        if (mClosed) {
+            throw new IOException("Store is closed");
+        }
+        if (mWriting == null || mWriting.rows == mRowsPerChunk) {
+            rotate();
+        }
+
+        Chunk chunk = mWriting;
+        ByteBuffer buffer = chunk.buffer;
+        int row = chunk.rows;
+        long timestamp = Math.max(frame.timestampNanos, mLastTimestamp);
+        int landmarks = frame.landmarkDetected ? Math.min(frame.landmarkCount, mMaxLandmarks) : 0;
+        int actionUnits = frame.actionUnitDetected ? Math.min(frame.actionUnitCount, mMaxActionUnits) : 0;
+
+        buffer.putLong(timestampOffset(row), timestamp);
+        buffer.putInt(countsOffset(row), landmarks | (actionUnits << 16));
+        for (int i = 0; i < mMaxLandmarks; i++) {
+            buffer.putFloat(columnOffset(i, row), i < landmarks ? frame.landmarkX[i] : Float.NaN);
+            buffer.putFloat(columnOffset(mMaxLandmarks + i, row), i < landmarks ? frame.landmarkY[i] : Float.NaN);
+        }
+        for (int i = 0; i < mMaxActionUnits; i++) {
+            buffer.putFloat(columnOffset(2 * mMaxLandmarks + i, row), i < actionUnits ? frame.actionUnitIntensity[i] : Float.NaN);
+        }
+
+        // The header is updated last, so a row only counts once it is complete
+        if (row == 0) {
+            chunk.firstTimestamp = timestamp;
+            buffer.putLong(OFFSET_FIRST_TIMESTAMP, timestamp);
+        }
+        chunk.lastTimestamp = timestamp;
+        chunk.rows = row + 1;
+        buffer.putLong(OFFSET_LAST_TIMESTAMP, timestamp);
+        buffer.putInt(OFFSET_ROW_COUNT, chunk.rows);
+        mLastTimestamp = timestamp;
+    }
+
+    /**
+     * Reads one column for a range of timestamps.
+     *
+     * @param fromNanos  first timestamp, inclusive
+     * @param toNanos    last timestamp, inclusive
+     * @param timestamps receives the timestamps of the rows read
+     * @param values     receives the values of the rows read, NaN where the row has none
+     * @return the number of rows read, at most the length of the arrays; scan again from the
+     * last timestamp + 1 to continue
+     */
+    public synchronized int scan(int column, long fromNanos, long toNanos, long[] timestamps, float[] values)
+            throws IOException {
+        checkIndex(column, mColumnCount);
+        int max = Math.min(timestamps.length, values.length);
+        int count = 0;
+        for (int i = 0; i < mChunkCount && count < max; i++) {
+            Chunk chunk = chunkAt(i);
+            if (chunk.rows == 0 || chunk.lastTimestamp < fromNanos) {
+                continue;
+            }
+            if (chunk.firstTimestamp > toNanos) {
+                break;
+            }
+            ByteBuffer buffer = map(chunk);
+            for (int row = firstRowAtOrAfter(buffer, chunk.rows, fromNanos); row < chunk.rows && count < max; row++) {
+                long timestamp = buffer.getLong(timestampOffset(row));
+                if (timestamp > toNanos) {
+                    return count;
+                }
+                timestamps[count] = timestamp;
+                values[count] = buffer.getFloat(columnOffset(column, row));
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Reads the first row at or after a timestamp into a frame. Fields other than the timestamp,
+     * landmarks and action units are cleared.
+     *
+     * @return false if there is no such row
+     */
+    public synchronized boolean read(long fromNanos, ResultFrame dst) throws IOException {
+        for (int i = 0; i < mChunkCount; i++) {
+            Chunk chunk = chunkAt(i);
+            if (chunk.rows == 0 || chunk.lastTimestamp < fromNanos) {
+                continue;
+            }
+            ByteBuffer buffer = map(chunk);
+            int row = firstRowAtOrAfter(buffer, chunk.rows, fromNanos);
+            int counts = buffer.getInt(countsOffset(row));
+            int landmarks = Math.min(counts & 0xffff, dst.landmarkX.length);
+            int actionUnits = Math.min(counts >>> 16, dst.actionUnitIntensity.length);
+
+            dst.clear();
+            dst.timestampNanos = buffer.getLong(timestampOffset(row));
+            dst.landmarkDetected = landmarks > 0;
+            dst.landmarkCount = landmarks;
+            for (int j = 0; j < landmarks; j++) {
+                dst.landmarkX[j] = buffer.getFloat(columnOffset(j, row));
+                dst.landmarkY[j] = buffer.getFloat(columnOffset(mMaxLandmarks + j, row));
+            }
+            dst.actionUnitDetected = actionUnits > 0;
+            dst.actionUnitCount = actionUnits;
+            for (int j = 0; j < actionUnits; j++) {
+                dst.actionUnitIntensity[j] = buffer.getFloat(columnOffset(2 * mMaxLandmarks + j, row));
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Appends the row assembled by wrap(), if any, and writes the current chunk to disk.
+     */
+    public synchronized void flush() throws IOException {
+        appendPending();
+        if (mWriting != null) {
+            mWriting.buffer.force();
+        }
+    }
+
+    /**
+     * Flushes the store and waits for the background thread. Rows appended afterwards are rejected.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            closeWriting();
+        } finally {
+            // Lets the queued chunk writes and deletions finish, then removes the unused spare chunk
+            mBackground.shutdown();
+            try {
+                if (!mBackground.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                    Log.w(TAG, "Background thread did not finish");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            File spare = new File(mDirectory, SPARE_NAME);
+            if (spare.exists() && !spare.delete()) {
+                Log.w(TAG, "Cannot delete " + spare);
+            }
+        }
+    }
+
+    private synchronized void closeWriting() throws IOException {
+        if (mClosed) {
+            return;
+        }
+        try {
+            flush();
+        } finally {
+            // The mappings themselves are released when the buffers are garbage collected
+            for (int i = 0; i < mChunkCount; i++) {
+                chunkAt(i).buffer = null;
+            }
+            mWriting = null;
+            mSpare = null;
+            mClosed = true;
+        }
+    }
+
+    /**
+     * Wraps a handler so that the landmarks and action units of every analyzed frame are
+     * appended to this store before they are passed on. A frame is appended when the face
+     * result of the next frame arrives, or by flush(). Frames without either are skipped.
+     * Timestamps are wall clock time in nanoseconds, taken from the monotonic clock.
+     */
+    public ESRC.ESRCHandler wrap(ESRC.ESRCHandler handler) {
+        final long epochOffsetNanos = System.currentTimeMillis() * 1000000L - SystemClock.elapsedRealtimeNanos();
+        return new ForwardingESRCHandler(handler) {
+            @Override
+            public void onDetectedFace(ESRCType.Face face, ESRCException e) {
+                if (e == null) {
+                    synchronized (LandmarkStore.this) {
+                        appendPendingOrLog();
+                        mPending.clear();
+                        mPending.timestampNanos = SystemClock.elapsedRealtimeNanos() + epochOffsetNanos;
+                        mHasPending = true;
+                    }
+                }
+                super.onDetectedFace(face, e);
+            }
+
+            @Override
+            public void onDetectedFacialLandmark(ESRCType.FacialLandmark facialLandmark, ESRCException e) {
+                if (e == null) {
+                    synchronized (LandmarkStore.this) {
+                        if (mHasPending) {
+                            ESRCResults.copyFacialLandmark(facialLandmark, mPending);
+                            RoiFeed roiFeed = mRoiFeed;
+                            if (roiFeed != null) {
+                                mPending.offsetLandmarks(roiFeed.getResultOffsetX(), roiFeed.getResultOffsetY());
+                            }
+                        }
+                    }
+                }
+                super.onDetectedFacialLandmark(facialLandmark, e);
+            }
+
+            @Override
+            public void onAnalyzedFacialActionUnit(ESRCType.FacialActionUnit facialActionUnit, ESRCException e) {
+                if (e == null) {
+                    synchronized (LandmarkStore.this) {
+                        if (mHasPending) {
+                            ESRCResults.copyFacialActionUnit(facialActionUnit, mPending);
+                        }
+                    }
+                }
+                super.onAnalyzedFacialActionUnit(facialActionUnit, e);
+            }
+        };
+    }
+
+    /**
+     * Appends the pending row, logging the first failure instead of throwing into the SDK. Must be called with the lock held.
+     */
+    private void appendPendingOrLog() {
+        if (mFailed) {
+            mHasPending = false;
+            return;
+        }
+        try {
+            appendPending();
+        } catch (IOException e) {
+            mFailed = true;
+            Log.w(TAG, "Recording stopped", e);
+        }
+    }
+
+    private void appendPending() throws IOException {
+        boolean hasValues = mHasPending && (mPending.landmarkCount > 0 || mPending.actionUnitCount > 0);
+        mHasPending = false;
+        if (hasValues && !mClosed) {
+            append(mPending);
+        }
+    }
+
+    /**
+     * Finishes the current chunk and starts the next one, deleting the oldest if needed.
+     */
+    private void rotate() throws IOException {
+        if (mWriting != null) {
+            final MappedByteBuffer finished = mWriting.buffer;
+            mBackground.execute(new Runnable() {
+                @Override
+                public void run() {
+                    finished.force();
+                }
+            });
+            // The mapping is kept for reading the finished chunk
+            mWriting = null;
+        }
+        if (mChunkCount == mChunks.length) {
+            deleteOldest();
+        }
+
+        Chunk chunk = new Chunk(new File(mDirectory, chunkName(mNextSequence)));
+        mNextSequence++;
+        chunk.buffer = takeSpare(chunk.file);
+        if (chunk.buffer == null) {
+            chunk.buffer = createChunk(chunk.file);
+        }
+        mChunks[(mFirstChunk + mChunkCount) % mChunks.length] = chunk;
+        mChunkCount++;
+        mWriting = chunk;
+        prepareSpare();
+    }
+
+    /**
+     * Starts creating the next chunk on the background thread, unless it is already under way. Must be called with the lock held.
+     */
+    private void prepareSpare() {
+        if (mSpare != null) {
+            return;
+        }
+        final File file = new File(mDirectory, SPARE_NAME);
+        mSpare = mBackground.submit(new Callable<MappedByteBuffer>() {
+            @Override
+            public MappedByteBuffer call() throws IOException {
+                return createChunk(file);
+            }
+        });
+    }
+
+    /**
+     * Renames the spare chunk to the given file if the background thread has finished it.
+     *
+     * @return the mapped spare chunk, or null if there is none yet
+     */
+    private MappedByteBuffer takeSpare(File file) throws IOException {
+        if (mSpare == null || !mSpare.isDone()) {
+            return null;
+        }
+        MappedByteBuffer buffer;
+        try {
+            buffer = mSpare.get();
+        } catch (ExecutionException e) {
+            Log.w(TAG, "Cannot create the spare chunk", e.getCause());
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } finally {
+            mSpare = null;
+        }
+        if (!new File(mDirectory, SPARE_NAME).renameTo(file)) {
+            throw new IOException("Cannot rename the spare chunk to " + file);
+        }
+        return buffer;
+    }
+
+    /**
+     * Creates a chunk file with an empty header and maps it for writing. Called on either thread.
+     */
+    private MappedByteBuffer createChunk(File file) throws IOException {
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            throw new IOException("Cannot create " + mDirectory);
+        }
+        MappedByteBuffer buffer;
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(mChunkSize);
+            buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, mChunkSize);
+        } finally {
+            raf.close();
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(OFFSET_MAGIC, MAGIC);
+        buffer.putInt(OFFSET_VERSION, VERSION);
+        buffer.putInt(OFFSET_LANDMARKS, mMaxLandmarks);
+        buffer.putInt(OFFSET_ACTION_UNITS, mMaxActionUnits);
+        buffer.putInt(OFFSET_ROWS_PER_CHUNK, mRowsPerChunk);
+        buffer.putInt(OFFSET_ROW_COUNT, 0);
+        return buffer;
+    }
+
+    private void deleteOldest() {
+        Chunk oldest = mChunks[mFirstChunk];
+        mChunks[mFirstChunk] = null;
+        mFirstChunk = (mFirstChunk + 1) % mChunks.length;
+        mChunkCount--;
+        oldest.buffer = null;
+        final File file = oldest.file;
+        mBackground.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (!file.delete()) {
+                    Log.w(TAG, "Cannot delete " + file);
+                }
+            }
+        });
+    }
+
+    /**
+     * Reads the headers of the chunks of earlier sessions, keeping the newest maxChunks.
+     */
+    private void openExisting() throws IOException {
+        String[] names = mDirectory.list();
+        if (names == null) {
+            return;
+        }
+        long[] sequences = new long[names.length];
+        int count = 0;
+        for (String name : names) {
+            long sequence = parseSequence(name);
+            if (sequence >= 0) {
+                sequences[count++] = sequence;
+            }
+        }
+        Arrays.sort(sequences, 0, count);
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < count; i++) {
+            mNextSequence = sequences[i] + 1;
+            Chunk chunk = new Chunk(new File(mDirectory, chunkName(sequences[i])));
+            if (!readHeader(chunk, header)) {
+                Log.w(TAG, "Ignoring incompatible chunk " + chunk.file);
+                continue;
+            }
+            if (mChunkCount == mChunks.length) {
+                deleteOldest();
+            }
+            mChunks[(mFirstChunk + mChunkCount) % mChunks.length] = chunk;
+            mChunkCount++;
+            if (chunk.rows > 0) {
+                mLastTimestamp = Math.max(mLastTimestamp, chunk.lastTimestamp);
+            }
+        }
+    }
+
+    private boolean readHeader(Chunk chunk, ByteBuffer header) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(chunk.file, "r");
+        try {
+            if (file.length() != mChunkSize) {
+                return false;
+            }
+            header.clear();
+            file.getChannel().read(header, 0);
+        } finally {
+            file.close();
+        }
+        if (header.getInt(OFFSET_MAGIC) != MAGIC || header.getInt(OFFSET_VERSION) != VERSION
+                || header.getInt(OFFSET_LANDMARKS) != mMaxLandmarks
+                || header.getInt(OFFSET_ACTION_UNITS) != mMaxActionUnits
+                || header.getInt(OFFSET_ROWS_PER_CHUNK) != mRowsPerChunk) {
+            return false;
+        }
+        chunk.rows = Math.min(Math.max(header.getInt(OFFSET_ROW_COUNT), 0), mRowsPerChunk);
+        chunk.firstTimestamp = header.getLong(OFFSET_FIRST_TIMESTAMP);
+        chunk.lastTimestamp = header.getLong(OFFSET_LAST_TIMESTAMP);
+        return true;
+    }
+
+    /**
+     * Returns the mapping of a chunk, mapping a chunk of an earlier session for reading on first use.
+     */
+    private ByteBuffer map(Chunk chunk) throws IOException {
+        if (chunk.buffer != null) {
+            return chunk.buffer;
+        }
+        RandomAccessFile file = new RandomAccessFile(chunk.file, "r");
+        try {
+            chunk.buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, mChunkSize);
+        } finally {
+            file.close();
+        }
+        chunk.buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return chunk.buffer;
+    }
+
+    private int firstRowAtOrAfter(ByteBuffer buffer, int rows, long timestamp) {
+        int low = 0;
+        int high = rows;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (buffer.getLong(timestampOffset(mid)) < timestamp) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private Chunk chunkAt(int index) {
+        return mChunks[(mFirstChunk + index) % mChunks.length];
+    }
+
+    private int timestampOffset(int row) {
+        return HEADER_SIZE + 8 * row;
+    }
+
+    private int countsOffset(int row) {
+        return HEADER_SIZE + 8 * mRowsPerChunk + 4 * row;
+    }
+
+    private int columnOffset(int column, int row) {
+        return HEADER_SIZE + 12 * mRowsPerChunk + 4 * (column * mRowsPerChunk + row);
+    }
+
+    private static int checkIndex(int index, int size) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " of " + size);
+        }
+        return index;
+    }
+
+    /**
+     * Returns the file name of a chunk, its sequence padded to ten digits. Must be called with the lock held.
+     */
+    private String chunkName(long sequence) {
+        StringBuilder name = mName;
+        name.setLength(0);
+        name.append(CHUNK_PREFIX);
+        for (long limit = 1000000000L; limit > 1 && sequence < limit; limit /= 10) {
+            name.append('0');
+        }
+        return name.append(sequence).append(CHUNK_SUFFIX).toString();
+    }
+
+    private static long parseSequence(String name) {
+        if (!name.startsWith(CHUNK_PREFIX) || !name.endsWith(CHUNK_SUFFIX)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(name.substring(CHUNK_PREFIX.length(), name.length() - CHUNK_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static final class Chunk {
+        final File file;
+        int rows;
+        long firstTimestamp;
+        long lastTimestamp;
+        /* Mapped for writing while the chunk is written and kept for reading, null until a chunk of an earlier session is read */
+        MappedByteBuffer buffer;
+
+        Chunk(File file) {
+            this.file = file;
+        }
+    }
+}
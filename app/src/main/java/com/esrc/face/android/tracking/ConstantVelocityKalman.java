@@ -0,0 +1,148 @@
+package com.esrc.face.android.tracking;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.video.KalmanFilter;
+
+/**
+ * Constant-velocity Kalman filter over n independent values, backed by org.opencv.video.KalmanFilter.
+ *
+ * The state is [x_0 .. x_n-1, v_0 .. v_n-1]. The filter's matrices are set once through set_*(),
+ * which makes the filter share their data with the Mats held here. The transition matrix and the
+ * process noise depend on the elapsed time and are rewritten in place only when it changes; the
+ * state and its covariance are read from the shared Mats. The Mat that KalmanFilter.predict() and
+ * correct() return is a new wrapper around the filter's state created by the native binding, which
+ * cannot be avoided without new JNI code; it is released right away. Not thread-safe.
+ */
+class ConstantVelocityKalman {
+    private final int mSize;
+    private final float mProcessNoise;
+    private final KalmanFilter mFilter;
+    private final Mat mIdentity;
+    private final Mat mVelocityShift;
+    private final Mat mTransition;
+    private final Mat mProcessNoiseCov;
+    private final Mat mMeasurement;
+    private final Mat mStatePost;
+    private final Mat mErrorCovPost;
+    private final float[] mState;
+    private float mElapsedSeconds = Float.NaN;
+    private boolean mInitialized;
+    private boolean mPredicted;
+
+    /**
+     * @param size             number of tracked values
+     * @param processNoise     variance of the process noise per second, scaled by the elapsed time of each step
+     * @param measurementNoise variance of the measurement noise
+     */
+    ConstantVelocityKalman(int size, float processNoise, float measurementNoise) {
+        int n = 2 * size;
+        mSize = size;
+        mProcessNoise = processNoise;
+        mFilter = new KalmanFilter(n, size, 0, CvType.CV_32F);
+
+        mIdentity = Mat.eye(n, n, CvType.CV_32F);
+        mVelocityShift = Mat.zeros(n, n, CvType.CV_32F);
+        for (int i = 0; i < size; i++) {
+            mVelocityShift.put(i, size + i, 1f);
+        }
+        mTransition = Mat.eye(n, n, CvType.CV_32F);
+        mProcessNoiseCov = Mat.eye(n, n, CvType.CV_32F);
+        mMeasurement = new Mat(size, 1, CvType.CV_32F);
+        mStatePost = Mat.zeros(n, 1, CvType.CV_32F);
+        mErrorCovPost = Mat.eye(n, n, CvType.CV_32F);
+        mState = new float[n];
+
+        // The filter keeps these Mats, so writing them in place updates the filter
+        mFilter.set_transitionMatrix(mTransition);
+        mFilter.set_processNoiseCov(mProcessNoiseCov);
+        mFilter.set_statePost(mStatePost);
+        mFilter.set_errorCovPost(mErrorCovPost);
+
+        Mat measurementMatrix = Mat.eye(size, n, CvType.CV_32F);
+        mFilter.set_measurementMatrix(measurementMatrix);
+        measurementMatrix.release();
+
+        Mat measurementNoiseCov = Mat.eye(size, size, CvType.CV_32F);
+        measurementNoiseCov.convertTo(measurementNoiseCov, -1, measurementNoise);
+        mFilter.set_measurementNoiseCov(measurementNoiseCov);
+        measurementNoiseCov.release();
+    }
+
+    boolean isInitialized() {
+        return mInitialized;
+    }
+
+    /**
+     * Starts over at the given values with zero velocity.
+     */
+    void reset(float[] values) {
+        for (int i = 0; i < mSize; i++) {
+            mState[i] = values[i];
+            mState[mSize + i] = 0f;
+        }
+        mStatePost.put(0, 0, mState);
+        Core.setIdentity(mErrorCovPost);
+        mInitialized = true;
+        mPredicted = false;
+    }
+
+    void clear() {
+        mInitialized = false;
+        mPredicted = false;
+    }
+
+    /**
+     * Advances the state by the elapsed time, which may be 0 to correct at the current time.
+     */
+    void predict(float elapsedSeconds) {
+        if (elapsedSeconds != mElapsedSeconds) {
+            // F = I + dt * shift, Q = processNoise * dt * I
+            Core.scaleAdd(mVelocityShift, elapsedSeconds, mIdentity, mTransition);
+            mIdentity.convertTo(mProcessNoiseCov, -1, mProcessNoise * elapsedSeconds);
+            mElapsedSeconds = elapsedSeconds;
+        }
+
+        mFilter.predict().release();
+        mStatePost.get(0, 0, mState);
+        mPredicted = true;
+    }
+
+    /**
+     * Corrects the state predicted by the last call of predict() with a measurement of all values.
+     */
+    void correct(float[] values) {
+        if (!mPredicted) {
+            throw new IllegalStateException("correct() must follow predict()");
+        }
+        mMeasurement.put(0, 0, values);
+        mFilter.correct(mMeasurement).release();
+        mStatePost.get(0, 0, mState);
+        mPredicted = false;
+    }
+
+    /**
+     * Returns the current estimate of a value.
+     */
+    float get(int i) {
+        return mState[i];
+    }
+
+    /**
+     * Returns the current velocity of a value per second.
+     */
+    float getVelocity(int i) {
+        return mState[mSize + i];
+    }
+
+    void release() {
+        mIdentity.release();
+        mVelocityShift.release();
+        mTransition.release();
+        mProcessNoiseCov.release();
+        mMeasurement.release();
+        mStatePost.release();
+        mErrorCovPost.release();
+    }
+}
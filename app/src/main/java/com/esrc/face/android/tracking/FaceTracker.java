@@ -0,0 +1,204 @@
+package com.esrc.face.android.tracking;
+
+import android.os.SystemClock;
+
+import com.esrc.face.android.ForwardingESRCHandler;
+import com.esrc.face.android.feed.RoiFeed;
+import com.esrc.face.android.result.ESRCResults;
+import com.esrc.face.android.result.ResultFrame;
+import com.esrc.face.sdk.android.ESRC;
+import com.esrc.face.sdk.android.ESRCException;
+import com.esrc.face.sdk.android.ESRCType;
+
+/**
+ * Tracks the face box and the head pose with constant-velocity Kalman filters.
+ *
+ * Detections correct the filters; predict() advances them to any later time, e.g. once per
+ * camera or display frame. The box and the pose therefore move smoothly even if face detection
+ * runs only every few frames. A face that has not been detected for the coast time is dropped.
+ * The filters use native OpenCV objects, so call release() when done.
+ */
+public class FaceTracker {
+    private static final float NANOS_PER_SECOND = 1e9f;
+
+    private final ConstantVelocityKalman mBox;
+    private final ConstantVelocityKalman mPose;
+    private final long mCoastNanos;
+    private final float[] mBoxMeasurement = new float[4];
+    private final float[] mPoseMeasurement = new float[3];
+    private final ResultFrame mScratch = new ResultFrame(0, 0);
+    private long mBoxTimeNanos;
+    private long mPoseTimeNanos;
+    private long mLastDetectionNanos;
+    private volatile RoiFeed mRoiFeed;
+
+    /**
+     * @param coastMillis how long the face is predicted after its last detection
+     */
+    public FaceTracker(long coastMillis) {
+        // Box in pixels (center x, center y, width, height), pose in degrees
+        mBox = new ConstantVelocityKalman(4, 3000f, 25f);
+        mPose = new ConstantVelocityKalman(3, 300f, 4f);
+        mCoastNanos = coastMillis * 1000000L;
+    }
+
+    public synchronized void correctFace(long timeNanos, int x, int y, int width, int height) {
+        mBoxMeasurement[0] = x + width / 2f;
+        mBoxMeasurement[1] = y + height / 2f;
+        mBoxMeasurement[2] = width;
+        mBoxMeasurement[3] = height;
+        if (!mBox.isInitialized()) {
+            mBox.reset(mBoxMeasurement);
+        } else {
+            predictForCorrection(mBox, mBoxTimeNanos, timeNanos);
+            mBox.correct(mBoxMeasurement);
+        }
+        mBoxTimeNanos = Math.max(mBoxTimeNanos, timeNanos);
+        mLastDetectionNanos = timeNanos;
+    }
+
+    public synchronized void correctHeadPose(long timeNanos, float yaw, float pitch, float roll) {
+        mPoseMeasurement[0] = yaw;
+        mPoseMeasurement[1] = pitch;
+        mPoseMeasurement[2] = roll;
+        if (!mPose.isInitialized()) {
+            mPose.reset(mPoseMeasurement);
+        } else {
+            predictForCorrection(mPose, mPoseTimeNanos, timeNanos);
+            mPose.correct(mPoseMeasurement);
+        }
+        mPoseTimeNanos = Math.max(mPoseTimeNanos, timeNanos);
+    }
+
+    /**
+     * Advances the box and the pose to the given time.
+     *
+     * @return whether a face is tracked at that time
+     */
+    public synchronized boolean predict(long timeNanos) {
+        if (!mBox.isInitialized()) {
+            return false;
+        }
+        if (timeNanos - mLastDetectionNanos > mCoastNanos) {
+            reset();
+            return false;
+        }
+        if (advance(mBox, mBoxTimeNanos, timeNanos)) {
+            mBoxTimeNanos = timeNanos;
+        }
+        if (mPose.isInitialized() && advance(mPose, mPoseTimeNanos, timeNanos)) {
+            mPoseTimeNanos = timeNanos;
+        }
+        return true;
+    }
+
+    public synchronized boolean hasFace() {
+        return mBox.isInitialized();
+    }
+
+    public synchronized boolean hasHeadPose() {
+        return mPose.isInitialized();
+    }
+
+    public synchronized int getFaceX() {
+        return Math.round(mBox.get(0) - mBox.get(2) / 2f);
+    }
+
+    public synchronized int getFaceY() {
+        return Math.round(mBox.get(1) - mBox.get(3) / 2f);
+    }
+
+    public synchronized int getFaceWidth() {
+        return Math.round(mBox.get(2));
+    }
+
+    public synchronized int getFaceHeight() {
+        return Math.round(mBox.get(3));
+    }
+
+    public synchronized float getYaw() {
+        return mPose.get(0);
+    }
+
+    public synchronized float getPitch() {
+        return mPose.get(1);
+    }
+
+    public synchronized float getRoll() {
+        return mPose.get(2);
+    }
+
+    /**
+     * Moves detected face boxes into full-frame coordinates when the frames are fed through the given RoiFeed.
+     */
+    public void setRoiFeed(RoiFeed roiFeed) {
+        mRoiFeed = roiFeed;
+    }
+
+    public synchronized void reset() {
+        mBox.clear();
+        mPose.clear();
+    }
+
+    public synchronized void release() {
+        reset();
+        mBox.release();
+        mPose.release();
+    }
+
+    /**
+     * Wraps a handler so that every detected face and head pose corrects this tracker before it is passed on.
+     */
+    public ESRC.ESRCHandler wrap(ESRC.ESRCHandler handler) {
+        return new ForwardingESRCHandler(handler) {
+            @Override
+            public void onDetectedFace(ESRCType.Face face, ESRCException e) {
+                if (e == null) {
+                    synchronized (FaceTracker.this) {
+                        ESRCResults.copyFace(face, mScratch);
+                        RoiFeed roiFeed = mRoiFeed;
+                        if (roiFeed != null) {
+                            mScratch.offsetFace(roiFeed.getResultOffsetX(), roiFeed.getResultOffsetY());
+                        }
+                        if (mScratch.faceDetected) {
+                            correctFace(now(), mScratch.faceX, mScratch.faceY, mScratch.faceWidth, mScratch.faceHeight);
+                        } else {
+                            reset();
+                        }
+                    }
+                }
+                super.onDetectedFace(face, e);
+            }
+
+            @Override
+            public void onEstimatedHeadPose(ESRCType.HeadPose headPose, ESRCException e) {
+                if (e == null) {
+                    synchronized (FaceTracker.this) {
+                        ESRCResults.copyHeadPose(headPose, mScratch);
+                        if (mScratch.headPoseDetected) {
+                            correctHeadPose(now(), mScratch.yaw, mScratch.pitch, mScratch.roll);
+                        }
+                    }
+                }
+                super.onEstimatedHeadPose(headPose, e);
+            }
+        };
+    }
+
+    private static boolean advance(ConstantVelocityKalman filter, long fromNanos, long toNanos) {
+        if (toNanos <= fromNanos) {
+            return false;
+        }
+        filter.predict((toNanos - fromNanos) / NANOS_PER_SECOND);
+        return true;
+    }
+
+    // A measurement that is not newer than the filter is applied at the filter's time
+    private static void predictForCorrection(ConstantVelocityKalman filter, long fromNanos, long toNanos) {
+        filter.predict(Math.max(0, toNanos - fromNanos) / NANOS_PER_SECOND);
+    }
+
+    private static long now() {
+        return SystemClock.elapsedRealtimeNanos();
+    }
+}
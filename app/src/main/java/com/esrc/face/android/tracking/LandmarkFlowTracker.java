@@ -0,0 +1,366 @@
+package com.esrc.face.android.tracking;
+
+import com.esrc.face.android.ForwardingESRCHandler;
+import com.esrc.face.android.feed.RoiFeed;
+import com.esrc.face.android.result.ESRCResults;
+import com.esrc.face.android.result.ResultFrame;
+import com.esrc.face.sdk.android.ESRC;
+import com.esrc.face.sdk.android.ESRCException;
+import com.esrc.face.sdk.android.ESRCType;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.core.MatOfFloat;
+import org.opencv.core.MatOfPoint2f;
+import org.opencv.core.Size;
+import org.opencv.video.Video;
+
+/**
+ * Carries the last detected facial landmarks forward with pyramidal Lucas-Kanade optical flow.
+ *
+ * Every camera frame is passed to track() as a gray Mat. Detected landmarks are taken over on
+ * the next tracked frame and then moved along with the image, so the ESRC SDK only has to be
+ * fed again when needsDetection() says so: when too many points are lost, the mean tracking
+ * error is too high, the points drifted too far from where they were detected, or too many
+ * frames have passed. Point and status Mats are allocated once and reused.
+ * Must be released when done.
+ *
+ * The SDK answers a fed frame a few frames later. onFed() therefore keeps a copy of each fed
+ * frame, and landmarks detected in it are first carried from that frame to the latest one, so
+ * tracking and the drift check start from where the face is now. Answers are matched to fed
+ * frames first in, first out. Landmarks whose frame is no longer kept are dropped.
+ *
+ * A frame that is not fed is not analyzed at all: while the landmarks are tracked, the face,
+ * action units, expressions and attention are not updated either. The tracked landmarks are
+ * only available through getLandmarks(), they are not passed to the ESRC handler. Keep
+ * maxFrames small, e.g. DEFAULT_MAX_FRAMES, unless the other results may lag that long.
+ */
+public class LandmarkFlowTracker {
+    /** Frames tracked without a detection by default, every third frame is fed on a steady face */
+    public static final int DEFAULT_MAX_FRAMES = 2;
+
+    private static final int MAX_PYRAMID_LEVEL = 3;
+    /** Fed frames kept until their landmarks arrive */
+    private static final int FED_FRAMES = 4;
+    private static final long NO_SEQUENCE = -1;
+
+    private final int mMaxLandmarks;
+    private final float mMaxLostFraction;
+    private final float mMaxError;
+    private final float mMaxDrift;
+    private final int mMaxFrames;
+    private final Size mWindowSize = new Size(21, 21);
+
+    // Accessed on the camera thread only
+    private final Mat mPrevGray = new Mat();
+    private final MatOfPoint2f mPrevPts = new MatOfPoint2f();
+    private final MatOfPoint2f mNextPts = new MatOfPoint2f();
+    private final MatOfByte mStatus = new MatOfByte();
+    private final MatOfFloat mError = new MatOfFloat();
+    private final float[] mPoints;
+    private final float[] mPrevPoints;
+    private final float[] mDetectedPoints;
+    private final byte[] mStatusValues;
+    private final float[] mErrorValues;
+    private int mCount;
+    private int mFrames;
+    private long mPrevFrame;
+    private final Mat[] mFedGray = new Mat[FED_FRAMES];
+    private final long[] mFedSequences = new long[FED_FRAMES];
+    private final long[] mFedFrames = new long[FED_FRAMES];
+
+    // Landmarks waiting for the next frame, guarded by this
+    private final ResultFrame mPending;
+    private long mPendingSequence = NO_SEQUENCE;
+    private boolean mHasPending;
+    private boolean mLost;
+
+    // Fed frames waiting for their answer, oldest first, guarded by this
+    private final long[] mInFlight = new long[FED_FRAMES];
+    private int mInFlightHead;
+    private int mInFlightCount;
+    private long mNextSequence;
+    private long mAnsweredSequence = NO_SEQUENCE;
+
+    // State published to other threads, guarded by this
+    private final float[] mPublished;
+    private int mPublishedCount;
+    private boolean mNeedsDetection = true;
+    private volatile RoiFeed mRoiFeed;
+
+    /**
+     * Creates a tracker that re-detects when 20% of the points are lost, the mean error exceeds 20,
+     * the points drifted by 15% of their size, or after DEFAULT_MAX_FRAMES frames.
+     *
+     * @param maxLandmarks largest number of landmarks tracked
+     */
+    public LandmarkFlowTracker(int maxLandmarks) {
+        this(maxLandmarks, 0.2f, 20f, 0.15f, DEFAULT_MAX_FRAMES);
+    }
+
+    /**
+     * @param maxLandmarks    largest number of landmarks tracked
+     * @param maxLostFraction share of points that may be lost before re-detecting, e.g. 0.2
+     * @param maxError        largest mean Lucas-Kanade error before re-detecting
+     * @param maxDrift        largest mean displacement since detection, relative to the size of the landmarks, e.g. 0.15
+     * @param maxFrames       largest number of frames tracked, and so not analyzed, without a detection
+     */
+    public LandmarkFlowTracker(int maxLandmarks, float maxLostFraction, float maxError, float maxDrift, int maxFrames) {
+        mMaxLandmarks = maxLandmarks;
+        mMaxLostFraction = maxLostFraction;
+        mMaxError = maxError;
+        mMaxDrift = maxDrift;
+        mMaxFrames = maxFrames;
+        mPoints = new float[2 * maxLandmarks];
+        mPrevPoints = new float[2 * maxLandmarks];
+        mDetectedPoints = new float[2 * maxLandmarks];
+        mStatusValues = new byte[maxLandmarks];
+        mErrorValues = new float[maxLandmarks];
+        mPending = new ResultFrame(maxLandmarks, 0);
+        mPublished = new float[2 * maxLandmarks];
+        for (int i = 0; i < FED_FRAMES; i++) {
+            mFedGray[i] = new Mat();
+            mFedSequences[i] = NO_SEQUENCE;
+        }
+    }
+
+    /**
+     * Moves detected landmarks into full-frame coordinates when the frames are fed through the given RoiFeed.
+     */
+    public void setRoiFeed(RoiFeed roiFeed) {
+        mRoiFeed = roiFeed;
+    }
+
+    /**
+     * Returns whether the landmarks can no longer be tracked and the SDK should detect them again.
+     */
+    public synchronized boolean needsDetection() {
+        return mNeedsDetection;
+    }
+
+    /**
+     * Copies the current landmarks into the given arrays and returns their number, 0 if none are tracked.
+     */
+    public synchronized int getLandmarks(float[] x, float[] y) {
+        int count = Math.min(mPublishedCount, Math.min(x.length, y.length));
+        for (int i = 0; i < count; i++) {
+            x[i] = mPublished[2 * i];
+            y[i] = mPublished[2 * i + 1];
+        }
+        return count;
+    }
+
+    /**
+     * Hands over newly detected landmarks in the last tracked frame. They are tracked from the next frame on.
+     */
+    public synchronized void setLandmarks(boolean detected, double[] x, double[] y) {
+        setLandmarks(NO_SEQUENCE, detected, x, y);
+    }
+
+    /**
+     * Hands over landmarks detected in a fed frame. On the next frame they are carried over from
+     * the fed frame and then tracked, or dropped if the fed frame is no longer kept.
+     *
+     * @param fedSequence the number returned by onFed() for the frame
+     */
+    public synchronized void setLandmarks(long fedSequence, boolean detected, double[] x, double[] y) {
+        mPending.setLandmarks(detected, x, y);
+        mPendingSequence = fedSequence;
+        mHasPending = true;
+    }
+
+    /**
+     * Records that the frame last passed to track() has been fed to the SDK. Call it on the camera thread.
+     *
+     * @return the number of the fed frame, for setLandmarks()
+     */
+    public long onFed() {
+        long sequence;
+        synchronized (this) {
+            sequence = mNextSequence++;
+            if (mInFlightCount == FED_FRAMES) {
+                mInFlightHead = (mInFlightHead + 1) % FED_FRAMES;
+                mInFlightCount--;
+            }
+            mInFlight[(mInFlightHead + mInFlightCount) % FED_FRAMES] = sequence;
+            mInFlightCount++;
+        }
+        int slot = (int) (sequence % FED_FRAMES);
+        mPrevGray.copyTo(mFedGray[slot]);
+        mFedSequences[slot] = sequence;
+        mFedFrames[slot] = mPrevFrame;
+        return sequence;
+    }
+
+    /**
+     * Drops the landmarks, e.g. when the face is lost.
+     */
+    public synchronized void clear() {
+        mLost = true;
+        mHasPending = false;
+        mPublishedCount = 0;
+        mNeedsDetection = true;
+    }
+
+    /**
+     * Tracks the landmarks into a new camera frame.
+     *
+     * @param gray 8-bit single channel frame
+     */
+    public void track(Mat gray) {
+        long detectedSequence = NO_SEQUENCE;
+        synchronized (this) {
+            if (mLost) {
+                mLost = false;
+                mCount = 0;
+            }
+            if (mHasPending) {
+                mHasPending = false;
+                startTracking();
+                detectedSequence = mPendingSequence;
+            }
+        }
+
+        boolean caughtUpNeedsDetection = false;
+        if (detectedSequence != NO_SEQUENCE && mCount > 0) {
+            int slot = (int) (detectedSequence % FED_FRAMES);
+            Mat fed = mFedGray[slot];
+            if (mFedSequences[slot] != detectedSequence || !sameSize(fed, mPrevGray)) {
+                // The frame the landmarks were detected in is no longer kept
+                mCount = 0;
+            } else if (mFedFrames[slot] != mPrevFrame) {
+                // Catch up with the frames tracked while the SDK analyzed the fed one
+                caughtUpNeedsDetection = propagate(fed, mPrevGray);
+            }
+        }
+
+        boolean needsDetection = true;
+        if (mCount > 0 && sameSize(mPrevGray, gray)) {
+            mFrames++;
+            needsDetection = propagate(mPrevGray, gray) || caughtUpNeedsDetection || mFrames >= mMaxFrames;
+        } else if (mCount > 0) {
+            // First frame after a detection, nothing to track yet
+            needsDetection = caughtUpNeedsDetection;
+        }
+        gray.copyTo(mPrevGray);
+        mPrevFrame++;
+
+        synchronized (this) {
+            if (!mLost) {
+                System.arraycopy(mPoints, 0, mPublished, 0, 2 * mCount);
+                mPublishedCount = mCount;
+                mNeedsDetection = needsDetection;
+            }
+        }
+    }
+
+    public void release() {
+        mPrevGray.release();
+        mPrevPts.release();
+        mNextPts.release();
+        mStatus.release();
+        mError.release();
+        for (int i = 0; i < FED_FRAMES; i++) {
+            mFedGray[i].release();
+        }
+    }
+
+    /**
+     * Wraps a handler so that detected landmarks are handed to this tracker before they are passed on.
+     */
+    public ESRC.ESRCHandler wrap(ESRC.ESRCHandler handler) {
+        return new ForwardingESRCHandler(handler) {
+            @Override
+            public void onDetectedFace(ESRCType.Face face, ESRCException e) {
+                // Every analyzed frame gets a face callback, which answers the oldest fed frame
+                synchronized (LandmarkFlowTracker.this) {
+                    if (mInFlightCount > 0) {
+                        mAnsweredSequence = mInFlight[mInFlightHead];
+                        mInFlightHead = (mInFlightHead + 1) % FED_FRAMES;
+                        mInFlightCount--;
+                    } else {
+                        mAnsweredSequence = NO_SEQUENCE;
+                    }
+                }
+                if (e == null && !face.getIsDetect()) {
+                    clear();
+                }
+                super.onDetectedFace(face, e);
+            }
+
+            @Override
+            public void onDetectedFacialLandmark(ESRCType.FacialLandmark facialLandmark, ESRCException e) {
+                if (e == null) {
+                    synchronized (LandmarkFlowTracker.this) {
+                        ESRCResults.copyFacialLandmark(facialLandmark, mPending);
+                        RoiFeed roiFeed = mRoiFeed;
+                        if (roiFeed != null) {
+                            mPending.offsetLandmarks(roiFeed.getResultOffsetX(), roiFeed.getResultOffsetY());
+                        }
+                        mPendingSequence = mAnsweredSequence;
+                        mHasPending = true;
+                    }
+                }
+                super.onDetectedFacialLandmark(facialLandmark, e);
+            }
+        };
+    }
+
+    /**
+     * Takes over the pending landmarks. Must be called with the lock held.
+     */
+    private void startTracking() {
+        mCount = mPending.landmarkDetected ? Math.min(mPending.landmarkCount, mMaxLandmarks) : 0;
+        for (int i = 0; i < mCount; i++) {
+            mPoints[2 * i] = mPending.landmarkX[i];
+            mPoints[2 * i + 1] = mPending.landmarkY[i];
+        }
+        System.arraycopy(mPoints, 0, mDetectedPoints, 0, 2 * mCount);
+        mFrames = 0;
+    }
+
+    /**
+     * Moves the points from one frame into another and returns whether they need re-detection.
+     */
+    private boolean propagate(Mat from, Mat to) {
+        System.arraycopy(mPoints, 0, mPrevPoints, 0, 2 * mCount);
+        mPrevPts.fromXY(mPoints, mCount);
+        Video.calcOpticalFlowPyrLK(from, to, mPrevPts, mNextPts, mStatus, mError, mWindowSize, MAX_PYRAMID_LEVEL);
+        mNextPts.toXY(mPoints);
+        mStatus.get(0, 0, mStatusValues);
+        mError.get(0, 0, mErrorValues);
+
+        int lost = 0;
+        float errorSum = 0f;
+        float driftSum = 0f;
+        float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE, maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE;
+        for (int i = 0; i < mCount; i++) {
+            float dx = mPoints[2 * i] - mDetectedPoints[2 * i];
+            float dy = mPoints[2 * i + 1] - mDetectedPoints[2 * i + 1];
+            if (mStatusValues[i] == 0) {
+                // A lost point stays where it was
+                mPoints[2 * i] = mPrevPoints[2 * i];
+                mPoints[2 * i + 1] = mPrevPoints[2 * i + 1];
+                lost++;
+            } else {
+                errorSum += mErrorValues[i];
+                driftSum += (float) Math.sqrt(dx * dx + dy * dy);
+            }
+            minX = Math.min(minX, mDetectedPoints[2 * i]);
+            maxX = Math.max(maxX, mDetectedPoints[2 * i]);
+            minY = Math.min(minY, mDetectedPoints[2 * i + 1]);
+            maxY = Math.max(maxY, mDetectedPoints[2 * i + 1]);
+        }
+
+        int tracked = mCount - lost;
+        if (tracked == 0 || lost > mMaxLostFraction * mCount) {
+            return true;
+        }
+        float size = Math.max(maxX - minX, maxY - minY);
+        return errorSum / tracked > mMaxError || (size > 0f && driftSum / tracked > mMaxDrift * size);
+    }
+
+    private static boolean sameSize(Mat a, Mat b) {
+        return a.rows() == b.rows() && a.cols() == b.cols();
+    }
+}
@@ -0,0 +1,83 @@
+package com.esrc.face.android.ui;
+
+import com.esrc.face.sdk.android.ESRCType;
+
+/**
+ * Immutable state of the result views for one display frame.
+ */
+public final class ResultSnapshot {
+    private final boolean mFaceDetected;
+    private final boolean mBasicFacialExpVisible;
+    private final ESRCType.BasicFacialExpression.Emotion mBasicFacialExpEmotion;
+    private final String mBasicFacialExpEmotionStr;
+    private final boolean mValenceFacialExpVisible;
+    private final ESRCType.ValenceFacialExpression.Emotion mValenceFacialExpEmotion;
+    private final String mValenceFacialExpEmotionStr;
+    private final boolean mAttentionVisible;
+    private final Boolean mAttend;
+
+    ResultSnapshot(boolean faceDetected,
+                   boolean basicFacialExpVisible,
+                   ESRCType.BasicFacialExpression.Emotion basicFacialExpEmotion,
+                   String basicFacialExpEmotionStr,
+                   boolean valenceFacialExpVisible,
+                   ESRCType.ValenceFacialExpression.Emotion valenceFacialExpEmotion,
+                   String valenceFacialExpEmotionStr,
+                   boolean attentionVisible,
+                   Boolean attend) {
+        mFaceDetected = faceDetected;
+        mBasicFacialExpVisible = basicFacialExpVisible;
+        mBasicFacialExpEmotion = basicFacialExpEmotion;
+        mBasicFacialExpEmotionStr = basicFacialExpEmotionStr;
+        mValenceFacialExpVisible = valenceFacialExpVisible;
+        mValenceFacialExpEmotion = valenceFacialExpEmotion;
+        mValenceFacialExpEmotionStr = valenceFacialExpEmotionStr;
+        mAttentionVisible = attentionVisible;
+        mAttend = attend;
+    }
+
+    public boolean isFaceDetected() {
+        return mFaceDetected;
+    }
+
+    public boolean isBasicFacialExpVisible() {
+        return mBasicFacialExpVisible;
+    }
+
+    /**
+     * Returns the last basic facial expression, or null if none has been recognized yet.
+     */
+    public ESRCType.BasicFacialExpression.Emotion getBasicFacialExpEmotion() {
+        return mBasicFacialExpEmotion;
+    }
+
+    public String getBasicFacialExpEmotionStr() {
+        return mBasicFacialExpEmotionStr;
+    }
+
+    public boolean isValenceFacialExpVisible() {
+        return mValenceFacialExpVisible;
+    }
+
+    /**
+     * Returns the last valence facial expression, or null if none has been recognized yet.
+     */
+    public ESRCType.ValenceFacialExpression.Emotion getValenceFacialExpEmotion() {
+        return mValenceFacialExpEmotion;
+    }
+
+    public String getValenceFacialExpEmotionStr() {
+        return mValenceFacialExpEmotionStr;
+    }
+
+    public boolean isAttentionVisible() {
+        return mAttentionVisible;
+    }
+
+    /**
+     * Returns whether the user attends, or null if attention has not been recognized yet.
+     */
+    public Boolean getAttend() {
+        return mAttend;
+    }
+}
@@ -0,0 +1,125 @@
+package com.esrc.face.android.ui;
+
+import android.view.Choreographer;
+
+import com.esrc.face.sdk.android.ESRCType;
+
+/**
+ * Merges the results of the ESRCHandler callbacks into one snapshot per display frame.
+ *
+ * Callbacks may arrive on any thread and at any rate. Each one only updates the pending state;
+ * at most one Choreographer frame callback is scheduled, which hands the renderer an immutable
+ * snapshot together with the one it rendered before, so unchanged views can be left alone.
+ * Must be created on the main thread.
+ */
+public class UiUpdateDispatcher {
+
+    /**
+     * Applies snapshots to the views. Called on the main thread.
+     */
+    public interface Renderer {
+        /**
+         * @param snapshot the state to show
+         * @param previous the state shown before, or null for the first frame
+         */
+        void render(ResultSnapshot snapshot, ResultSnapshot previous);
+    }
+
+    private final Choreographer mChoreographer;
+    private final Renderer mRenderer;
+    private final Choreographer.FrameCallback mFrameCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            dispatch();
+        }
+    };
+
+    // Pending state, guarded by this
+    private boolean mFrameScheduled;
+    private boolean mFaceDetected;
+    private boolean mBasicFacialExpVisible;
+    private ESRCType.BasicFacialExpression.Emotion mBasicFacialExpEmotion;
+    private String mBasicFacialExpEmotionStr;
+    private boolean mValenceFacialExpVisible;
+    private ESRCType.ValenceFacialExpression.Emotion mValenceFacialExpEmotion;
+    private String mValenceFacialExpEmotionStr;
+    private boolean mAttentionVisible;
+    private Boolean mAttend;
+
+    // Accessed on the main thread only
+    private ResultSnapshot mRendered;
+
+    public UiUpdateDispatcher(Renderer renderer) {
+        mChoreographer = Choreographer.getInstance();
+        mRenderer = renderer;
+    }
+
+    public synchronized void onDetectedFace(boolean isDetect) {
+        mFaceDetected = isDetect;
+        if (isDetect) {
+            mAttentionVisible = true;
+        } else {
+            // Results of a lost face are hidden
+            mBasicFacialExpVisible = false;
+            mValenceFacialExpVisible = false;
+            mAttentionVisible = false;
+        }
+        scheduleFrame();
+    }
+
+    public synchronized void onRecognizedBasicFacialExpression(ESRCType.BasicFacialExpression.Emotion emotion, String emotionStr) {
+        if (emotion != null) {
+            mBasicFacialExpEmotion = emotion;
+        }
+        mBasicFacialExpEmotionStr = emotionStr;
+        mBasicFacialExpVisible = true;
+        scheduleFrame();
+    }
+
+    public synchronized void onRecognizedValenceFacialExpression(ESRCType.ValenceFacialExpression.Emotion emotion, String emotionStr) {
+        if (emotion != null) {
+            mValenceFacialExpEmotion = emotion;
+        }
+        mValenceFacialExpEmotionStr = emotionStr;
+        mValenceFacialExpVisible = true;
+        scheduleFrame();
+    }
+
+    public synchronized void onRecognizedAttention(boolean isAttend) {
+        mAttend = isAttend;
+        mAttentionVisible = true;
+        scheduleFrame();
+    }
+
+    /**
+     * Drops a scheduled update, e.g. when the views are being destroyed.
+     */
+    public synchronized void cancel() {
+        if (mFrameScheduled) {
+            mChoreographer.removeFrameCallback(mFrameCallback);
+            mFrameScheduled = false;
+        }
+    }
+
+    private void scheduleFrame() {
+        if (!mFrameScheduled) {
+            mFrameScheduled = true;
+            mChoreographer.postFrameCallback(mFrameCallback);
+        }
+    }
+
+    private void dispatch() {
+        ResultSnapshot snapshot;
+        synchronized (this) {
+            mFrameScheduled = false;
+            snapshot = new ResultSnapshot(mFaceDetected,
+                    mBasicFacialExpVisible, mBasicFacialExpEmotion, mBasicFacialExpEmotionStr,
+                    mValenceFacialExpVisible, mValenceFacialExpEmotion, mValenceFacialExpEmotionStr,
+                    mAttentionVisible, mAttend);
+        }
+
+        ResultSnapshot previous = mRendered;
+        mRendered = snapshot;
+        mRenderer.render(snapshot, previous);
+    }
+}
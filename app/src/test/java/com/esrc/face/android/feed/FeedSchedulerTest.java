@@ -0,0 +1,80 @@
+package com.esrc.face.android.feed;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test for {@link FeedScheduler}.
+ */
+public class FeedSchedulerTest {
+    private static final long MS = 1000000L;
+    private static final long FRAME = 33 * MS;
+
+    @Test
+    public void fastResults_feedEveryFrame() {
+        FeedScheduler scheduler = new FeedScheduler(100, 2);
+        long now = 0;
+        for (int i = 0; i < 100; i++) {
+            assertTrue(scheduler.shouldFeed(now));
+            scheduler.onFed(now);
+            scheduler.onResult(now + 20 * MS);
+            now += FRAME;
+        }
+        assertEquals(1, scheduler.getDecimation());
+        assertEquals(0, scheduler.getSkippedFrames());
+    }
+
+    @Test
+    public void inFlightCap_skipsFrames() {
+        FeedScheduler scheduler = new FeedScheduler(1000, 2);
+        assertTrue(scheduler.shouldFeed(0));
+        scheduler.onFed(0);
+        assertTrue(scheduler.shouldFeed(FRAME));
+        scheduler.onFed(FRAME);
+        assertFalse(scheduler.shouldFeed(2 * FRAME));
+        assertEquals(1, scheduler.getSkippedFrames());
+
+        scheduler.onResult(3 * FRAME);
+        assertTrue(scheduler.shouldFeed(3 * FRAME));
+    }
+
+    @Test
+    public void slowResults_increaseDecimation() {
+        FeedScheduler scheduler = new FeedScheduler(100, 4);
+        long now = 0;
+        for (int i = 0; i < 200; i++) {
+            if (scheduler.shouldFeed(now)) {
+                scheduler.onFed(now);
+                scheduler.onResult(now + 250 * MS);
+            }
+            now += FRAME;
+        }
+        assertTrue(scheduler.getDecimation() > 1);
+    }
+
+    @Test
+    public void unansweredFrames_expire() {
+        FeedScheduler scheduler = new FeedScheduler(100, 1);
+        assertTrue(scheduler.shouldFeed(0));
+        scheduler.onFed(0);
+        assertFalse(scheduler.shouldFeed(FRAME));
+        assertTrue(scheduler.shouldFeed(500 * MS));
+        assertEquals(0, scheduler.getInFlight());
+    }
+
+    @Test
+    public void reset_clearsCounters() {
+        FeedScheduler scheduler = new FeedScheduler(100, 1);
+        scheduler.shouldFeed(0);
+        scheduler.onFed(0);
+        assertFalse(scheduler.shouldFeed(FRAME));
+        assertEquals(1, scheduler.getSkippedFrames());
+
+        scheduler.reset();
+        assertEquals(0, scheduler.getSkippedFrames());
+        assertEquals(0, scheduler.getInFlight());
+        assertEquals(0, scheduler.getAverageLatencyNanos());
+        assertTrue(scheduler.shouldFeed(2 * FRAME));
+    }
+}
@@ -0,0 +1,33 @@
+package com.esrc.face.android.feed;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test for the feed rate of {@link ModuleRateController}.
+ */
+public class ModuleRateControllerTest {
+    private static final long MS = 1000000L;
+
+    @Test
+    public void shouldFeed_keepsSlotUntilFed() {
+        ModuleRateController rates = new ModuleRateController();  // fastest module at 30 Hz
+        assertTrue(rates.shouldFeed(100 * MS));
+
+        // The frame was not fed, e.g. held back by the scheduler, so the next one is still due
+        assertTrue(rates.shouldFeed(110 * MS));
+        rates.onFed(110 * MS);
+        assertFalse(rates.shouldFeed(120 * MS));
+        assertTrue(rates.shouldFeed(145 * MS));
+    }
+
+    @Test
+    public void shouldFeed_withAllModulesDisabled_neverFeeds() {
+        ModuleRateController rates = new ModuleRateController();
+        for (ModuleRateController.Module module : ModuleRateController.Module.values()) {
+            rates.setRate(module, 0);
+        }
+        assertFalse(rates.shouldFeed(1000 * MS));
+    }
+}
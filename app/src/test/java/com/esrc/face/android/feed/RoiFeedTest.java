@@ -0,0 +1,70 @@
+package com.esrc.face.android.feed;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test for the region queue of {@link RoiFeed}.
+ */
+public class RoiFeedTest {
+
+    @Test
+    public void onFace_usesRegionOfAnsweredFrame() {
+        RoiFeed feed = new RoiFeed(0.5f, 0.6f);
+        feed.enqueue(0, 0, 640, 480);
+        feed.enqueue(200, 100, 240, 240, 260, 160, 120, 120);
+
+        feed.onFace(true, 250, 150, 100, 100);
+        assertEquals(0, feed.getResultOffsetX());
+        assertTrue(feed.isLocked());
+
+        feed.onFace(true, 70, 70, 100, 100);
+        assertEquals(200, feed.getResultOffsetX());
+        assertEquals(100, feed.getResultOffsetY());
+    }
+
+    @Test
+    public void onFace_skipsUnansweredFrame() {
+        RoiFeed feed = new RoiFeed(0.5f, 0.6f);
+        // The SDK drops the first frame; the face of the second lies inside the first region but
+        // is much smaller than the face that region was cropped around
+        feed.enqueue(200, 100, 320, 320, 280, 180, 160, 160);
+        feed.enqueue(320, 220, 160, 160, 360, 260, 80, 80);
+        feed.enqueue(330, 220, 160, 160, 370, 260, 80, 80);
+
+        feed.onFace(true, 40, 40, 80, 80);
+        assertEquals(320, feed.getResultOffsetX());
+        feed.onFace(true, 45, 40, 80, 80);
+        assertEquals(330, feed.getResultOffsetX());
+    }
+
+    @Test
+    public void onFace_matchesFullFrameByContainment() {
+        RoiFeed feed = new RoiFeed(0.5f, 0.6f);
+        // The face of the second frame does not fit the small first frame
+        feed.enqueue(0, 0, 100, 100);
+        feed.enqueue(0, 0, 640, 480);
+
+        feed.onFace(true, 60, 60, 80, 80);
+        assertTrue(feed.isLocked());
+        assertEquals(0, feed.getResultOffsetX());
+
+        // The first frame was dropped, so no region is left for another result
+        feed.onFace(true, 60, 60, 80, 80);
+        assertFalse(feed.isLocked());
+    }
+
+    @Test
+    public void onFace_withoutMatchingRegion_resets() {
+        RoiFeed feed = new RoiFeed(0.5f, 0.6f);
+        feed.enqueue(0, 0, 640, 480);
+        feed.onFace(true, 100, 100, 100, 100);
+        assertTrue(feed.isLocked());
+
+        // More results than fed frames
+        feed.onFace(true, 100, 100, 100, 100);
+        assertFalse(feed.isLocked());
+        assertEquals(0, feed.getResultOffsetX());
+    }
+}
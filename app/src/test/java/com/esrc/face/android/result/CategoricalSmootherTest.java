@@ -0,0 +1,51 @@
+package com.esrc.face.android.result;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test for {@link CategoricalSmoother}.
+ */
+public class CategoricalSmootherTest {
+
+    @Test
+    public void majority_ignoresSingleFlicker() {
+        CategoricalSmoother smoother = CategoricalSmoother.majority(3, 5);
+        int[] raw = {0, 0, 0, 1, 0, 0, 2, 0};
+        for (int category : raw) {
+            assertEquals(0, smoother.update(category));
+        }
+    }
+
+    @Test
+    public void majority_followsSustainedChange() {
+        CategoricalSmoother smoother = CategoricalSmoother.majority(3, 5);
+        for (int i = 0; i < 5; i++) {
+            smoother.update(0);
+        }
+        assertEquals(0, smoother.update(1));
+        assertEquals(0, smoother.update(1));
+        assertEquals(1, smoother.update(1));
+        assertEquals(0.6f, smoother.getScore(1), 1e-6f);
+    }
+
+    @Test
+    public void hysteresis_delaysSwitch() {
+        CategoricalSmoother smoother = CategoricalSmoother.ema(2, 0.5f).setHysteresis(0.8f, 0.3f);
+        assertEquals(1, smoother.update(1));
+        assertEquals(1, smoother.update(0));  // 0.5 / 0.5
+        assertEquals(1, smoother.update(0));  // 0.75 / 0.25
+        assertEquals(0, smoother.update(0));  // 0.875 / 0.125
+    }
+
+    @Test
+    public void missingValue_keepsOutput() {
+        CategoricalSmoother smoother = CategoricalSmoother.ema(7, 0.3f);
+        assertEquals(CategoricalSmoother.NONE, smoother.update(-1));
+        assertEquals(3, smoother.update(3));
+        assertEquals(3, smoother.update(-1));
+        smoother.reset();
+        assertEquals(CategoricalSmoother.NONE, smoother.getOutput());
+    }
+}
@@ -0,0 +1,60 @@
+package com.esrc.face.android.result;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test for {@link ResultRing}.
+ */
+public class ResultRingTest {
+
+    @Test
+    public void copy_returnsNewestFirst() {
+        ResultRing ring = new ResultRing(4, 2, 2);
+        for (int i = 0; i < 3; i++) {
+            ring.beginFrame(i).setFace(true, i, 0, 10, 10);
+        }
+
+        ResultFrame frame = new ResultFrame(2, 2);
+        assertEquals(3, ring.size());
+        assertTrue(ring.copy(0, frame));
+        assertEquals(2, frame.faceX);
+        assertTrue(ring.copy(2, frame));
+        assertEquals(0, frame.faceX);
+        assertFalse(ring.copy(3, frame));
+    }
+
+    @Test
+    public void fullRing_reusesOldestFrame() {
+        ResultRing ring = new ResultRing(3, 2, 2);
+        assertEquals(4, ring.capacity());
+        ResultFrame first = ring.beginFrame(0);
+        first.attention = 1;
+        for (int i = 1; i < 5; i++) {
+            ring.beginFrame(i);
+        }
+
+        assertSame(first, ring.currentFrame(5));
+        assertEquals(ResultFrame.NO_ATTENTION, first.attention);
+        assertEquals(4, ring.size());
+        assertEquals(5, ring.getCount());
+    }
+
+    @Test
+    public void setLandmarks_truncatesToCapacity() {
+        ResultFrame frame = new ResultFrame(2, 1);
+        frame.setLandmarks(true, new double[] {1, 2, 3}, new double[] {4, 5, 6});
+        frame.setActionUnits(true, new double[] {0.5, 0.25});
+
+        assertEquals(2, frame.landmarkCount);
+        assertEquals(2f, frame.landmarkX[1], 0f);
+        assertEquals(5f, frame.landmarkY[1], 0f);
+        assertEquals(1, frame.actionUnitCount);
+
+        ResultFrame small = new ResultFrame(1, 1);
+        frame.copyTo(small);
+        assertEquals(1, small.landmarkCount);
+        assertEquals(1f, small.landmarkX[0], 0f);
+    }
+}
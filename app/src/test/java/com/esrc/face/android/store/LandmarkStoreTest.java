@@ -0,0 +1,133 @@
+package com.esrc.face.android.store;
+
+import com.esrc.face.android.result.ResultFrame;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test for {@link LandmarkStore}.
+ */
+public class LandmarkStoreTest {
+    private File mDirectory;
+
+    @Before
+    public void createDirectory() throws IOException {
+        mDirectory = Files.createTempDirectory("landmarks").toFile();
+    }
+
+    @After
+    public void deleteDirectory() {
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDirectory.delete();
+    }
+
+    @Test
+    public void scan_readsColumnAcrossChunks() throws IOException {
+        LandmarkStore store = new LandmarkStore(mDirectory, 2, 1, 4, 8);
+        ResultFrame frame = new ResultFrame(2, 1);
+        for (int i = 0; i < 10; i++) {
+            append(store, frame, i * 100, i);
+        }
+        assertEquals(3, store.getChunkCount());
+        assertEquals(10, store.getRowCount());
+
+        long[] timestamps = new long[16];
+        float[] values = new float[16];
+        int count = store.scan(store.landmarkYColumn(1), 250, 700, timestamps, values);
+        assertEquals(5, count);
+        for (int i = 0; i < count; i++) {
+            assertEquals((i + 3) * 100, timestamps[i]);
+            assertEquals(10 * (i + 3) + 2, values[i], 0f);
+        }
+
+        // Paged by the length of the arrays
+        assertEquals(2, store.scan(store.actionUnitColumn(0), 0, 1000, new long[2], new float[2]));
+        store.close();
+    }
+
+    @Test
+    public void append_deletesOldestChunkBeyondLimit() throws IOException {
+        LandmarkStore store = new LandmarkStore(mDirectory, 2, 1, 2, 2);
+        ResultFrame frame = new ResultFrame(2, 1);
+        for (int i = 0; i < 5; i++) {
+            append(store, frame, i * 100, i);
+        }
+        assertEquals(2, store.getChunkCount());
+
+        long[] timestamps = new long[8];
+        int count = store.scan(store.landmarkXColumn(0), 0, 1000, timestamps, new float[8]);
+        assertEquals(3, count);
+        assertEquals(200, timestamps[0]);
+
+        // The oldest chunks are deleted on the background thread, which close() waits for
+        store.close();
+        assertEquals(2, mDirectory.list().length);
+    }
+
+    @Test
+    public void reopen_readsEarlierSession() throws IOException {
+        LandmarkStore store = new LandmarkStore(mDirectory, 2, 1, 4, 8);
+        ResultFrame frame = new ResultFrame(2, 1);
+        append(store, frame, 100, 1);
+        append(store, frame, 200, 2);
+        store.close();
+
+        LandmarkStore reopened = new LandmarkStore(mDirectory, 2, 1, 4, 8);
+        assertEquals(2, reopened.getRowCount());
+        // A timestamp from before the earlier session is stored as its last one
+        append(reopened, frame, 50, 3);
+
+        ResultFrame read = new ResultFrame(2, 1);
+        assertTrue(reopened.read(150, read));
+        assertEquals(200, read.timestampNanos);
+        assertEquals(2, read.landmarkCount);
+        assertEquals(21, read.landmarkX[1], 0f);
+        assertEquals(1, read.actionUnitCount);
+
+        long[] timestamps = new long[8];
+        assertEquals(3, reopened.scan(reopened.landmarkXColumn(0), 0, 1000, timestamps, new float[8]));
+        assertEquals(200, timestamps[2]);
+        assertFalse(reopened.read(201, read));
+        reopened.close();
+    }
+
+    @Test
+    public void missingValues_areNaN() throws IOException {
+        LandmarkStore store = new LandmarkStore(mDirectory, 2, 1, 4, 8);
+        ResultFrame frame = new ResultFrame(2, 1);
+        frame.timestampNanos = 100;
+        frame.setLandmarks(true, new double[] {1}, new double[] {2});
+        store.append(frame);
+
+        float[] values = new float[1];
+        assertEquals(1, store.scan(store.landmarkXColumn(1), 0, 100, new long[1], values));
+        assertTrue(Float.isNaN(values[0]));
+        assertEquals(1, store.scan(store.actionUnitColumn(0), 0, 100, new long[1], values));
+        assertTrue(Float.isNaN(values[0]));
+        store.close();
+    }
+
+    /**
+     * Appends a frame whose landmark i is (10 * value + i, 10 * value + i + 1) and whose action unit intensity is value.
+     */
+    private static void append(LandmarkStore store, ResultFrame frame, long timestamp, int value) throws IOException {
+        frame.clear();
+        frame.timestampNanos = timestamp;
+        frame.setLandmarks(true, new double[] {10 * value, 10 * value + 1}, new double[] {10 * value + 1, 10 * value + 2});
+        frame.setActionUnits(true, new double[] {value});
+        store.append(frame);
+    }
+}
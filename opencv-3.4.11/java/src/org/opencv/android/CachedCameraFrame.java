@@ -0,0 +1,173 @@
+package org.opencv.android;
+
+import org.opencv.android.CameraBridgeViewBase.CvCameraViewFrame;
+import org.opencv.core.Mat;
+import org.opencv.core.MatPool;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Camera frame that converts lazily and at most once per frame.
+ *
+ * rgba(), gray() and their downscaled variants are computed on first use and then returned
+ * as they are until the frame gets new content and invalidate() is called. The destination
+ * Mats belong to the frame and are reused for every frame of the same size, so several
+ * consumers of one frame (analysis, recording, preview) share one conversion.
+ * Subclasses supply the color conversion and the gray view of the camera data. The downscaled
+ * Mats are taken from the pool set with setMatPool(), if any, and handed back to it when the
+ * frame size changes or the buffers are released.
+ */
+public abstract class CachedCameraFrame implements CvCameraViewFrame {
+    /** Largest level of rgba(int) and gray(int): 1 is half size, 2 is quarter size */
+    public static final int MAX_LEVEL = 2;
+
+    private final Mat mRgba = new Mat();
+    private Mat mGray;
+    private boolean mRgbaValid;
+    private final Mat[] mRgbaLevels = new Mat[MAX_LEVEL + 1];
+    private final Mat[] mGrayLevels = new Mat[MAX_LEVEL + 1];
+    private final boolean[] mRgbaLevelValid = new boolean[MAX_LEVEL + 1];
+    private final boolean[] mGrayLevelValid = new boolean[MAX_LEVEL + 1];
+    private int mConversionCount;
+    private MatPool mMatPool;
+
+    /**
+     * Converts the camera data of the current frame into an RGBA Mat.
+     * @param dst - destination, reallocated by the conversion only if its size or type differs
+     */
+    protected abstract void convertRgba(Mat dst);
+
+    /**
+     * Returns a single channel Mat over the luminance of the current frame, usually without copying.
+     * The result is cached until invalidate(true) is called.
+     */
+    protected abstract Mat createGray();
+
+    @Override
+    public Mat rgba() {
+        if (!mRgbaValid) {
+            convertRgba(mRgba);
+            mRgbaValid = true;
+            mConversionCount++;
+        }
+        return mRgba;
+    }
+
+    @Override
+    public Mat gray() {
+        if (mGray == null)
+            mGray = createGray();
+        return mGray;
+    }
+
+    /**
+     * Returns the RGBA frame downscaled by a power of two.
+     * @param level - 0 for full size, 1 for half size, up to MAX_LEVEL
+     */
+    public Mat rgba(int level) {
+        if (level == 0)
+            return rgba();
+        checkLevel(level);
+        if (!mRgbaLevelValid[level]) {
+            Mat src = rgba(level - 1);
+            Imgproc.pyrDown(src, levelMat(mRgbaLevels, level, src));
+            mRgbaLevelValid[level] = true;
+            mConversionCount++;
+        }
+        return mRgbaLevels[level];
+    }
+
+    /**
+     * Returns the gray frame downscaled by a power of two.
+     * @param level - 0 for full size, 1 for half size, up to MAX_LEVEL
+     */
+    public Mat gray(int level) {
+        if (level == 0)
+            return gray();
+        checkLevel(level);
+        if (!mGrayLevelValid[level]) {
+            Mat src = gray(level - 1);
+            Imgproc.pyrDown(src, levelMat(mGrayLevels, level, src));
+            mGrayLevelValid[level] = true;
+            mConversionCount++;
+        }
+        return mGrayLevels[level];
+    }
+
+    /**
+     * Sets the pool the downscaled Mats are taken from.
+     * @param pool - null to allocate and release them directly
+     */
+    public void setMatPool(MatPool pool) {
+        mMatPool = pool;
+    }
+
+    /**
+     * Returns how many conversions (color conversions and downscales) this frame has run so far.
+     */
+    public int getConversionCount() {
+        return mConversionCount;
+    }
+
+    /**
+     * Marks the cached conversions as outdated because the frame has new content.
+     * @param releaseGray - true if the gray view no longer points at the camera data and must be recreated
+     */
+    protected void invalidate(boolean releaseGray) {
+        mRgbaValid = false;
+        for (int i = 0; i <= MAX_LEVEL; i++) {
+            mRgbaLevelValid[i] = false;
+            mGrayLevelValid[i] = false;
+        }
+        if (releaseGray && mGray != null) {
+            mGray.release();
+            mGray = null;
+        }
+    }
+
+    /**
+     * Releases all Mats owned by the frame.
+     */
+    protected void releaseBuffers() {
+        invalidate(true);
+        mRgba.release();
+        for (int i = 0; i <= MAX_LEVEL; i++) {
+            if (mRgbaLevels[i] != null) {
+                releaseMat(mRgbaLevels[i]);
+                mRgbaLevels[i] = null;
+            }
+            if (mGrayLevels[i] != null) {
+                releaseMat(mGrayLevels[i]);
+                mGrayLevels[i] = null;
+            }
+        }
+    }
+
+    /* Returns the Mat of a level, exchanged for one of the size pyrDown() makes from src if needed */
+    private Mat levelMat(Mat[] levels, int level, Mat src) {
+        int rows = (src.rows() + 1) / 2;
+        int cols = (src.cols() + 1) / 2;
+        int type = src.type();
+        Mat dst = levels[level];
+        if (dst == null || dst.rows() != rows || dst.cols() != cols || dst.type() != type) {
+            if (dst != null)
+                releaseMat(dst);
+            MatPool pool = mMatPool;
+            dst = pool != null ? pool.acquire(rows, cols, type) : new Mat(rows, cols, type);
+            levels[level] = dst;
+        }
+        return dst;
+    }
+
+    private void releaseMat(Mat mat) {
+        MatPool pool = mMatPool;
+        if (pool != null)
+            pool.release(mat);
+        else
+            mat.release();
+    }
+
+    private static void checkLevel(int level) {
+        if (level < 0 || level > MAX_LEVEL)
+            throw new IllegalArgumentException("Level must be between 0 and " + MAX_LEVEL + ": " + level);
+    }
+}
@@ -1,10 +1,14 @@
 package org.opencv.android;
 
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
 
 import org.opencv.BuildConfig;
 import org.opencv.R;
 import org.opencv.core.Mat;
+import org.opencv.core.MatPool;
 import org.opencv.core.Size;
 
 import android.app.Activity;
@@ -33,6 +37,10 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
     protected static final int MAX_UNSPECIFIED = -1;
     private static final int STOPPED = 0;
     private static final int STARTED = 1;
+    private static final int STAGE_COUNT = 4;
+    /* Mailbox layout for asynchronous rendering: bitmap index plus a "not drawn yet" flag */
+    private static final int MAILBOX_INDEX_MASK = 0x3;
+    private static final int MAILBOX_FRESH = 0x4;
 
     private int mState = STOPPED;
     private Bitmap mCacheBitmap;
@@ -40,15 +48,38 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
     private boolean mSurfaceExist;
     private final Object mSyncObject = new Object();
 
+    private boolean mAsyncRenderingEnabled;
+    private boolean mAsyncRendering;
+    private Bitmap[] mRenderBitmaps;
+    private int mWriteIdx;
+    private final AtomicInteger mMailbox = new AtomicInteger();
+    private Thread mRenderThread;
+    private volatile boolean mStopRenderThread;
+    private final AtomicLongArray mStageLastNanos = new AtomicLongArray(STAGE_COUNT);
+    private final AtomicLongArray mStageAvgNanos = new AtomicLongArray(STAGE_COUNT);
+
+    /* Draw geometry, recomputed only when the canvas, bitmap or scale changes */
+    private final Rect mSrcRect = new Rect();
+    private final Rect mDstRect = new Rect();
+    private int mGeometryCanvasWidth = -1;
+    private int mGeometryCanvasHeight = -1;
+    private int mGeometryBitmapWidth = -1;
+    private int mGeometryBitmapHeight = -1;
+    private float mGeometryScale;
+
     protected int mFrameWidth;
     protected int mFrameHeight;
     protected int mMaxHeight;
     protected int mMaxWidth;
     protected float mScale = 0;
     protected int mPreviewFormat = RGBA;
+    private int mGrayPreviewInterval = 1;
+    private int mGrayPreviewCountdown;
+    private int mAnalysisPyramidLevels;
     protected int mCameraIndex = CAMERA_ID_ANY;
     protected boolean mEnabled;
     protected FpsMeter mFpsMeter = null;
+    private volatile MatPool mMatPool;
 
     public static final int CAMERA_ID_ANY   = -1;
     public static final int CAMERA_ID_BACK  = 99;
@@ -56,6 +87,15 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
     public static final int RGBA = 1;
     public static final int GRAY = 2;
 
+    /** Time spent in the listener's onCameraFrame() callback */
+    public static final int STAGE_ANALYSIS = 0;
+    /** Time spent converting the returned Mat to the display Bitmap */
+    public static final int STAGE_CONVERT = 1;
+    /** Time spent locking the surface, drawing the Bitmap and posting it */
+    public static final int STAGE_DRAW = 2;
+    /** Time spent downscaling the frame for the analysis pyramid */
+    public static final int STAGE_PYRAMID = 3;
+
     public CameraBridgeViewBase(Context context, int cameraId) {
         super(context);
         mCameraIndex = cameraId;
@@ -136,7 +176,20 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
         public Mat onCameraFrame(CvCameraViewFrame inputFrame);
     };
 
-    protected class CvCameraViewListenerAdapter implements CvCameraViewListener2  {
+    /**
+     * Optional interface for a CvCameraViewListener2 to declare which frame format it reads.
+     * A listener that declares GRAY promises to call only CvCameraViewFrame.gray(), so the color
+     * conversion of rgba() never runs for its frames. The Mat it returns is then only displayed
+     * every n-th frame, see setGrayPreviewInterval(). The format is queried for every frame.
+     */
+    public interface CvCameraViewFrameFormat {
+        /**
+         * @return RGBA or GRAY
+         */
+        public int getFrameFormat();
+    };
+
+    protected class CvCameraViewListenerAdapter implements CvCameraViewListener2, CvCameraViewFrameFormat  {
         public CvCameraViewListenerAdapter(CvCameraViewListener oldStypeListener) {
             mOldStyleListener = oldStypeListener;
         }
@@ -169,6 +222,10 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
             mPreviewFormat = format;
         }
 
+        public int getFrameFormat() {
+            return mPreviewFormat;
+        }
+
         private int mPreviewFormat = RGBA;
         private CvCameraViewListener mOldStyleListener;
     };
@@ -255,6 +312,45 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
             mFpsMeter = null;
     }
 
+    /**
+     * This method moves drawing to a separate render thread. The camera thread still runs
+     * the listener and converts its result to a Bitmap, then hands the Bitmap over through
+     * a single-slot mailbox where a newer frame replaces one that has not been drawn yet.
+     * A slow surface therefore no longer delays the analysis of the next frame.
+     * Takes effect the next time the camera is started.
+     */
+    public void enableAsyncRendering() {
+        mAsyncRenderingEnabled = true;
+    }
+
+    public void disableAsyncRendering() {
+        mAsyncRenderingEnabled = false;
+    }
+
+    /**
+     * Returns the duration of the given stage for the last frame that went through it.
+     * @param stage - STAGE_ANALYSIS, STAGE_CONVERT, STAGE_DRAW or STAGE_PYRAMID
+     * @return duration in nanoseconds
+     */
+    public long getLastStageTimeNanos(int stage) {
+        return mStageLastNanos.get(stage);
+    }
+
+    /**
+     * Returns the moving average (over about 16 frames) of the duration of the given stage.
+     * @param stage - STAGE_ANALYSIS, STAGE_CONVERT, STAGE_DRAW or STAGE_PYRAMID
+     * @return duration in nanoseconds
+     */
+    public long getAverageStageTimeNanos(int stage) {
+        return mStageAvgNanos.get(stage);
+    }
+
+    private void recordStageTime(int stage, long nanos) {
+        mStageLastNanos.set(stage, nanos);
+        long avg = mStageAvgNanos.get(stage);
+        mStageAvgNanos.set(stage, avg == 0 ? nanos : avg + ((nanos - avg) >> 4));
+    }
+
     /**
      *
      * @param listener
@@ -270,6 +366,63 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
         mListener = adapter;
     }
 
+    /**
+     * Sets how often the Mat returned by a listener that reads only gray frames is displayed.
+     * With an interval of n, only every n-th frame is converted to the display Bitmap and drawn.
+     * @param interval - 1 to display every frame
+     */
+    public void setGrayPreviewInterval(int interval) {
+        if (interval < 1)
+            throw new IllegalArgumentException("Preview interval must be at least 1: " + interval);
+        mGrayPreviewInterval = interval;
+    }
+
+    /**
+     * Sets how many downscaled copies of each frame are prepared before the listener is called.
+     * Level 1 is half and level 2 is quarter resolution, made with pyrDown into Mats that the
+     * frame reuses. They are built from gray() for listeners that declare the GRAY format and
+     * from rgba() otherwise, so analysis can run at a fraction of the preview resolution while
+     * the returned full size Mat is displayed. Listeners pick a level with
+     * CachedCameraFrame.rgba(int) or gray(int); frames that are not a CachedCameraFrame are
+     * delivered unchanged.
+     * @param levels - 0 to disable, up to CachedCameraFrame.MAX_LEVEL
+     */
+    public void setAnalysisPyramidLevels(int levels) {
+        if (levels < 0 || levels > CachedCameraFrame.MAX_LEVEL)
+            throw new IllegalArgumentException("Levels must be between 0 and " + CachedCameraFrame.MAX_LEVEL + ": " + levels);
+        mAnalysisPyramidLevels = levels;
+    }
+
+    /**
+     * Sets a pool for the camera buffers Mats and the downscaled Mats of CachedCameraFrame, so
+     * restarting the camera with the same frame size (e.g. after the activity was paused) or
+     * switching back to an earlier size reuses them instead of allocating new ones.
+     * The pool may be shared between views.
+     * @param pool - null to allocate and release the buffers directly
+     */
+    public void setMatPool(MatPool pool) {
+        mMatPool = pool;
+    }
+
+    /**
+     * Allocates a camera buffer Mat, from the pool if one is set.
+     */
+    protected Mat acquireMat(int rows, int cols, int type) {
+        MatPool pool = mMatPool;
+        return pool != null ? pool.acquire(rows, cols, type) : new Mat(rows, cols, type);
+    }
+
+    /**
+     * Releases a Mat obtained from acquireMat(), back to the pool if one is set.
+     */
+    protected void releaseMat(Mat mat) {
+        MatPool pool = mMatPool;
+        if (pool != null)
+            pool.release(mat);
+        else
+            mat.release();
+    }
+
     /**
      * This method sets the maximum size that camera frame is allowed to be. When selecting
      * size - the biggest size which less or equal the size set will be selected.
@@ -356,8 +509,12 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
     // Bitmap must be constructed before surface
     private void onEnterStartedState() {
         Log.d(TAG, "call onEnterStartedState");
+        mAsyncRendering = mAsyncRenderingEnabled;
         /* Connect camera */
-        if (!connectCamera(getWidth(), getHeight())) {
+        if (connectCamera(getWidth(), getHeight())) {
+            if (mAsyncRendering)
+                startRenderThread();
+        } else {
             AlertDialog ad = new AlertDialog.Builder(getContext()).create();
             ad.setCancelable(false); // This blocks the 'BACK' button
             ad.setMessage("It seems that you device does not support camera (or it is locked). Application will be closed.");
@@ -374,9 +531,51 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
 
     private void onExitStartedState() {
         disconnectCamera();
+        stopRenderThread();
         if (mCacheBitmap != null) {
             mCacheBitmap.recycle();
         }
+        if (mRenderBitmaps != null) {
+            for (Bitmap bitmap : mRenderBitmaps) {
+                if (bitmap != mCacheBitmap)
+                    bitmap.recycle();
+            }
+            mRenderBitmaps = null;
+        }
+    }
+
+    private void startRenderThread() {
+        mStopRenderThread = false;
+        mRenderThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                int readIdx = 2;
+                while (!mStopRenderThread) {
+                    if ((mMailbox.get() & MAILBOX_FRESH) == 0) {
+                        LockSupport.park(CameraBridgeViewBase.this);
+                        continue;
+                    }
+                    readIdx = mMailbox.getAndSet(readIdx) & MAILBOX_INDEX_MASK;
+                    drawBitmap(mRenderBitmaps[readIdx]);
+                }
+                Log.d(TAG, "Finish render thread");
+            }
+        }, "OpenCVRenderThread");
+        mRenderThread.start();
+    }
+
+    private void stopRenderThread() {
+        if (mRenderThread == null)
+            return;
+        mStopRenderThread = true;
+        LockSupport.unpark(mRenderThread);
+        try {
+            mRenderThread.join();
+        } catch (InterruptedException e) {
+            Log.e(TAG, "stopRenderThread", e);
+        } finally {
+            mRenderThread = null;
+        }
     }
 
     /**
@@ -388,54 +587,127 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
     protected void deliverAndDrawFrame(CvCameraViewFrame frame) {
         Mat modified;
 
+        if (frame instanceof CachedCameraFrame)
+            ((CachedCameraFrame) frame).setMatPool(mMatPool);
+
+        int levels = mAnalysisPyramidLevels;
+        if (levels > 0 && frame instanceof CachedCameraFrame) {
+            long pyramidStart = System.nanoTime();
+            buildAnalysisPyramid((CachedCameraFrame) frame, levels);
+            recordStageTime(STAGE_PYRAMID, System.nanoTime() - pyramidStart);
+        }
+
+        long start = System.nanoTime();
         if (mListener != null) {
             modified = mListener.onCameraFrame(frame);
         } else {
             modified = frame.rgba();
         }
+        long analyzed = System.nanoTime();
+        recordStageTime(STAGE_ANALYSIS, analyzed - start);
+
+        if (mListener instanceof CvCameraViewFrameFormat
+                && ((CvCameraViewFrameFormat) mListener).getFrameFormat() == GRAY) {
+            /* Gray-only consumers get a preview at a lower rate */
+            if (mGrayPreviewCountdown > 0) {
+                mGrayPreviewCountdown--;
+                return;
+            }
+            mGrayPreviewCountdown = mGrayPreviewInterval - 1;
+        }
 
+        Bitmap bitmap = mAsyncRendering ? mRenderBitmaps[mWriteIdx] : mCacheBitmap;
         boolean bmpValid = true;
         if (modified != null) {
             try {
-                Utils.matToBitmap(modified, mCacheBitmap);
+                Utils.matToBitmap(modified, bitmap);
             } catch(Exception e) {
                 Log.e(TAG, "Mat type: " + modified);
-                Log.e(TAG, "Bitmap type: " + mCacheBitmap.getWidth() + "*" + mCacheBitmap.getHeight());
+                Log.e(TAG, "Bitmap type: " + bitmap.getWidth() + "*" + bitmap.getHeight());
                 Log.e(TAG, "Utils.matToBitmap() throws an exception: " + e.getMessage());
                 bmpValid = false;
             }
+            recordStageTime(STAGE_CONVERT, System.nanoTime() - analyzed);
         }
 
-        if (bmpValid && mCacheBitmap != null) {
-            Canvas canvas = getHolder().lockCanvas();
-            if (canvas != null) {
-                canvas.drawColor(0, android.graphics.PorterDuff.Mode.CLEAR);
-                if (BuildConfig.DEBUG)
-                    Log.d(TAG, "mStretch value: " + mScale);
-
-                if (mScale != 0) {
-                    canvas.drawBitmap(mCacheBitmap, new Rect(0,0,mCacheBitmap.getWidth(), mCacheBitmap.getHeight()),
-                         new Rect((int)((canvas.getWidth() - mScale*mCacheBitmap.getWidth()) / 2),
-                         (int)((canvas.getHeight() - mScale*mCacheBitmap.getHeight()) / 2),
-                         (int)((canvas.getWidth() - mScale*mCacheBitmap.getWidth()) / 2 + mScale*mCacheBitmap.getWidth()),
-                         (int)((canvas.getHeight() - mScale*mCacheBitmap.getHeight()) / 2 + mScale*mCacheBitmap.getHeight())), null);
-                } else {
-                     canvas.drawBitmap(mCacheBitmap, new Rect(0,0,mCacheBitmap.getWidth(), mCacheBitmap.getHeight()),
-                         new Rect((canvas.getWidth() - mCacheBitmap.getWidth()) / 2,
-                         (canvas.getHeight() - mCacheBitmap.getHeight()) / 2,
-                         (canvas.getWidth() - mCacheBitmap.getWidth()) / 2 + mCacheBitmap.getWidth(),
-                         (canvas.getHeight() - mCacheBitmap.getHeight()) / 2 + mCacheBitmap.getHeight()), null);
-                }
-
-                if (mFpsMeter != null) {
-                    mFpsMeter.measure();
-                    mFpsMeter.draw(canvas, 20, 30);
-                }
-                getHolder().unlockCanvasAndPost(canvas);
+        if (bmpValid && bitmap != null) {
+            if (mAsyncRendering) {
+                /* Publish the bitmap and continue with the one the mailbox held before */
+                mWriteIdx = mMailbox.getAndSet(mWriteIdx | MAILBOX_FRESH) & MAILBOX_INDEX_MASK;
+                LockSupport.unpark(mRenderThread);
+            } else {
+                drawBitmap(bitmap);
             }
         }
     }
 
+    private void buildAnalysisPyramid(CachedCameraFrame frame, int levels) {
+        boolean gray = mListener instanceof CvCameraViewFrameFormat
+                && ((CvCameraViewFrameFormat) mListener).getFrameFormat() == GRAY;
+        /* Each level is made from the one above it, so asking for the smallest builds them all */
+        if (gray)
+            frame.gray(levels);
+        else
+            frame.rgba(levels);
+    }
+
+    private void drawBitmap(Bitmap bitmap) {
+        long start = System.nanoTime();
+        Canvas canvas = getHolder().lockCanvas();
+        if (canvas != null) {
+            drawFrameBitmap(canvas, bitmap);
+            getHolder().unlockCanvasAndPost(canvas);
+            recordStageTime(STAGE_DRAW, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Draws the frame bitmap centered (and scaled by mScale if set) on the canvas.
+     * The source and destination rectangles are cached, so apart from the FPS meter
+     * nothing is allocated per frame.
+     * @param canvas - the canvas to draw on
+     * @param bitmap - the frame to draw
+     */
+    protected void drawFrameBitmap(Canvas canvas, Bitmap bitmap) {
+        canvas.drawColor(0, android.graphics.PorterDuff.Mode.CLEAR);
+
+        if (canvas.getWidth() != mGeometryCanvasWidth || canvas.getHeight() != mGeometryCanvasHeight
+                || bitmap.getWidth() != mGeometryBitmapWidth || bitmap.getHeight() != mGeometryBitmapHeight
+                || mScale != mGeometryScale) {
+            updateDrawGeometry(canvas.getWidth(), canvas.getHeight(), bitmap.getWidth(), bitmap.getHeight());
+        }
+        canvas.drawBitmap(bitmap, mSrcRect, mDstRect, null);
+
+        if (mFpsMeter != null) {
+            mFpsMeter.measure();
+            mFpsMeter.draw(canvas, 20, 30);
+        }
+    }
+
+    private void updateDrawGeometry(int canvasWidth, int canvasHeight, int bitmapWidth, int bitmapHeight) {
+        if (BuildConfig.DEBUG)
+            Log.d(TAG, "mStretch value: " + mScale);
+
+        mSrcRect.set(0, 0, bitmapWidth, bitmapHeight);
+        if (mScale != 0) {
+            mDstRect.set((int)((canvasWidth - mScale*bitmapWidth) / 2),
+                 (int)((canvasHeight - mScale*bitmapHeight) / 2),
+                 (int)((canvasWidth - mScale*bitmapWidth) / 2 + mScale*bitmapWidth),
+                 (int)((canvasHeight - mScale*bitmapHeight) / 2 + mScale*bitmapHeight));
+        } else {
+            mDstRect.set((canvasWidth - bitmapWidth) / 2,
+                 (canvasHeight - bitmapHeight) / 2,
+                 (canvasWidth - bitmapWidth) / 2 + bitmapWidth,
+                 (canvasHeight - bitmapHeight) / 2 + bitmapHeight);
+        }
+
+        mGeometryCanvasWidth = canvasWidth;
+        mGeometryCanvasHeight = canvasHeight;
+        mGeometryBitmapWidth = bitmapWidth;
+        mGeometryBitmapHeight = bitmapHeight;
+        mGeometryScale = mScale;
+    }
+
     /**
      * This method is invoked shall perform concrete operation to initialize the camera.
      * CONTRACT: as a result of this method variables mFrameWidth and mFrameHeight MUST be
@@ -455,6 +727,15 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
     protected void AllocateCache()
     {
         mCacheBitmap = Bitmap.createBitmap(mFrameWidth, mFrameHeight, Bitmap.Config.ARGB_8888);
+        if (mAsyncRendering) {
+            /* Triple buffering: one bitmap being filled, one in the mailbox, one being drawn */
+            mRenderBitmaps = new Bitmap[3];
+            mRenderBitmaps[0] = mCacheBitmap;
+            mRenderBitmaps[1] = Bitmap.createBitmap(mFrameWidth, mFrameHeight, Bitmap.Config.ARGB_8888);
+            mRenderBitmaps[2] = Bitmap.createBitmap(mFrameWidth, mFrameHeight, Bitmap.Config.ARGB_8888);
+            mWriteIdx = 0;
+            mMailbox.set(1);
+        }
     }
 
     public interface ListItemAccessor {
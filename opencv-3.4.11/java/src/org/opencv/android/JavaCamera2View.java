@@ -1,6 +1,7 @@
 package org.opencv.android;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
 import java.util.Arrays;
 import java.util.List;
 
@@ -24,7 +25,9 @@ import android.view.Surface;
 import android.view.ViewGroup.LayoutParams;
 
 import org.opencv.core.CvType;
+import org.opencv.core.DirectBufferMat;
 import org.opencv.core.Mat;
+import org.opencv.core.MatScope;
 import org.opencv.core.Size;
 import org.opencv.imgproc.Imgproc;
 
@@ -42,6 +45,7 @@ import org.opencv.imgproc.Imgproc;
 public class JavaCamera2View extends CameraBridgeViewBase {
 
     private static final String LOGTAG = "JavaCamera2View";
+    private static final int MAX_IMAGES = 2;
 
     private ImageReader mImageReader;
     private int mPreviewFormat = ImageFormat.YUV_420_888;
@@ -55,6 +59,10 @@ public class JavaCamera2View extends CameraBridgeViewBase {
     private HandlerThread mBackgroundThread;
     private Handler mBackgroundHandler;
 
+    /* Frames are recycled between images, at most one per image the reader can hold */
+    private final ArrayDeque<JavaCamera2Frame> mFramePool = new ArrayDeque<JavaCamera2Frame>(MAX_IMAGES);
+    private JavaCamera2Frame[] mFrames;
+
     public JavaCamera2View(Context context, int cameraId) {
         super(context, cameraId);
     }
@@ -170,7 +178,8 @@ public class JavaCamera2View extends CameraBridgeViewBase {
                 return;
             }
 
-            mImageReader = ImageReader.newInstance(w, h, mPreviewFormat, 2);
+            mImageReader = ImageReader.newInstance(w, h, mPreviewFormat, MAX_IMAGES);
+            allocateFramePool(mImageReader.getMaxImages());
             mImageReader.setOnImageAvailableListener(new ImageReader.OnImageAvailableListener() {
                 @Override
                 public void onImageAvailable(ImageReader reader) {
@@ -183,9 +192,13 @@ public class JavaCamera2View extends CameraBridgeViewBase {
                     assert (planes.length == 3);
                     assert (image.getFormat() == mPreviewFormat);
 
-                    JavaCamera2Frame tempFrame = new JavaCamera2Frame(image);
-                    deliverAndDrawFrame(tempFrame);
-                    tempFrame.release();
+                    JavaCamera2Frame frame = obtainFrame(image);
+                    if (frame == null) { // every pooled frame is still in use, drop this image
+                        image.close();
+                        return;
+                    }
+                    deliverAndDrawFrame(frame);
+                    recycleFrame(frame);
                     image.close();
                 }
             }, mBackgroundHandler);
@@ -247,10 +260,51 @@ public class JavaCamera2View extends CameraBridgeViewBase {
                 mImageReader.close();
                 mImageReader = null;
             }
+            releaseFramePool();
         }
         Log.i(LOGTAG, "camera closed!");
     }
 
+    private void allocateFramePool(int size) {
+        releaseFramePool();
+        synchronized (mFramePool) {
+            mFrames = new JavaCamera2Frame[size];
+            for (int i = 0; i < size; i++) {
+                mFrames[i] = new JavaCamera2Frame();
+                mFramePool.offer(mFrames[i]);
+            }
+        }
+    }
+
+    private void releaseFramePool() {
+        synchronized (mFramePool) {
+            mFramePool.clear();
+            if (mFrames != null) {
+                for (JavaCamera2Frame frame : mFrames)
+                    frame.destroy();
+                mFrames = null;
+            }
+        }
+    }
+
+    private JavaCamera2Frame obtainFrame(Image image) {
+        JavaCamera2Frame frame;
+        synchronized (mFramePool) {
+            frame = mFramePool.poll();
+        }
+        if (frame != null)
+            frame.setImage(image);
+        return frame;
+    }
+
+    private void recycleFrame(JavaCamera2Frame frame) {
+        frame.release();
+        synchronized (mFramePool) {
+            if (mFrames != null)
+                mFramePool.offer(frame);
+        }
+    }
+
     public static class JavaCameraSizeAccessor implements ListItemAccessor {
         @Override
         public int getWidth(Object obj) {
@@ -327,21 +381,191 @@ public class JavaCamera2View extends CameraBridgeViewBase {
         return true;
     }
 
-    public static class JavaCamera2Frame implements CvCameraViewFrame {
+    /**
+     * Converts planar (I420) YUV_420_888 images to RGBA.
+     * The source planes are wrapped as strided Mats directly over their buffers and
+     * copied by OpenCV into a persistent I420 Mat, which is only reallocated when the
+     * resolution changes. Sizes the I420 layout cannot be viewed that way (height not
+     * a multiple of 4 or odd width) are packed row by row into a Mat over a direct buffer
+     * instead, so the chroma rows are copied once without a Java array in between.
+     */
+    public static class I420Converter {
+        private Mat mYuv = new Mat();
+        private Mat mY;
+        private Mat mU;
+        private Mat mV;
+        private DirectBufferMat mPacked;
+        private Mat mPackedY;
+        private int mWidth;
+        private int mHeight;
+        private final MatScope mScope = new MatScope();
+
+        /**
+         * @param y - luma plane, h x w CV_8UC1, may be strided
+         * @param uPlane - U plane buffer, pixel stride 1
+         * @param vPlane - V plane buffer, pixel stride 1
+         * @param chromaRowStride - row stride of the U and V planes
+         * @param rgba - destination, (re)allocated as h x w CV_8UC4
+         */
+        public void convert(Mat y, ByteBuffer uPlane, ByteBuffer vPlane, int chromaRowStride, Mat rgba) {
+            int w = y.cols();
+            int h = y.rows();
+            if (h % 4 != 0 || w % 2 != 0) {
+                if (mPacked == null || mPacked.rows() != h + h / 2 || mPacked.cols() != w)
+                    allocatePacked(w, h);
+                y.copyTo(mPackedY);
+                ByteBuffer packed = mPacked.buffer();
+                packed.clear();
+                packed.position(w * h);
+                copyRows(uPlane, chromaRowStride, w / 2, h / 2, packed);
+                copyRows(vPlane, chromaRowStride, w / 2, h / 2, packed);
+                Imgproc.cvtColor(mPacked, rgba, Imgproc.COLOR_YUV2RGBA_I420, 4);
+                return;
+            }
+
+            if (w != mWidth || h != mHeight)
+                allocate(w, h);
+
+            y.copyTo(mY);
+            try {
+                mScope.track(new Mat(h / 2, w / 2, CvType.CV_8UC1, uPlane, chromaRowStride)).copyTo(mU);
+                mScope.track(new Mat(h / 2, w / 2, CvType.CV_8UC1, vPlane, chromaRowStride)).copyTo(mV);
+            } finally {
+                mScope.close();
+            }
+            Imgproc.cvtColor(mYuv, rgba, Imgproc.COLOR_YUV2RGBA_I420, 4);
+        }
+
+        /**
+         * Reference implementation, repacks the planes row by row through a Java byte[].
+         * When {@code y_plane} is null the luma plane is expected to be already stored
+         * at the beginning of {@code yuv_bytes}.
+         */
+        public static void copyI420(ByteBuffer y_plane, int y_plane_step, ByteBuffer u_plane, ByteBuffer v_plane,
+                                    int chromaRowStride, int w, int h, byte[] yuv_bytes, Mat yuv_mat, Mat rgba) {
+            int yuv_bytes_offset = 0;
+
+            if (y_plane == null) {
+                yuv_bytes_offset = w*h;
+            } else if (y_plane_step == w) {
+                y_plane.get(yuv_bytes, 0, w*h);
+                yuv_bytes_offset = w*h;
+            } else {
+                int padding = y_plane_step - w;
+                for (int i = 0; i < h; i++){
+                    y_plane.get(yuv_bytes, yuv_bytes_offset, w);
+                    yuv_bytes_offset += w;
+                    if (i < h - 1) {
+                        y_plane.position(y_plane.position() + padding);
+                    }
+                }
+                assert(yuv_bytes_offset == w * h);
+            }
+
+            int chromaRowPadding = chromaRowStride - w/2;
+
+            if (chromaRowPadding == 0){
+                // When the row stride of the chroma channels equals their width, we can copy
+                // the entire channels in one go
+                u_plane.get(yuv_bytes, yuv_bytes_offset, w*h/4);
+                yuv_bytes_offset += w*h/4;
+                v_plane.get(yuv_bytes, yuv_bytes_offset, w*h/4);
+            } else {
+                // When not equal, we need to copy the channels row by row
+                for (int i = 0; i < h/2; i++){
+                    u_plane.get(yuv_bytes, yuv_bytes_offset, w/2);
+                    yuv_bytes_offset += w/2;
+                    if (i < h/2-1){
+                        u_plane.position(u_plane.position() + chromaRowPadding);
+                    }
+                }
+                for (int i = 0; i < h/2; i++){
+                    v_plane.get(yuv_bytes, yuv_bytes_offset, w/2);
+                    yuv_bytes_offset += w/2;
+                    if (i < h/2-1){
+                        v_plane.position(v_plane.position() + chromaRowPadding);
+                    }
+                }
+            }
+
+            yuv_mat.create(h+h/2, w, CvType.CV_8UC1);
+            yuv_mat.put(0, 0, yuv_bytes);
+            Imgproc.cvtColor(yuv_mat, rgba, Imgproc.COLOR_YUV2RGBA_I420, 4);
+        }
+
+        private void allocate(int w, int h) {
+            releaseViews();
+            mYuv.create(h + h / 2, w, CvType.CV_8UC1);
+            mY = mYuv.submat(0, h, 0, w);
+            // U and V are stored back to back as (h/2) x (w/2) planes after the luma rows
+            mU = mYuv.rowRange(h, h + h / 4).reshape(1, h / 2);
+            mV = mYuv.rowRange(h + h / 4, h + h / 2).reshape(1, h / 2);
+            mWidth = w;
+            mHeight = h;
+        }
+
+        private void allocatePacked(int w, int h) {
+            releasePacked();
+            mPacked = new DirectBufferMat(h + h / 2, w, CvType.CV_8UC1);
+            mPackedY = mPacked.submat(0, h, 0, w);
+        }
+
+        /**
+         * Appends rows of width bytes, stride bytes apart in src, to dst. The position and
+         * limit of src are restored afterwards.
+         */
+        private static void copyRows(ByteBuffer src, int stride, int width, int rows, ByteBuffer dst) {
+            int start = src.position();
+            int limit = src.limit();
+            for (int i = 0; i < rows; i++) {
+                src.limit(start + i * stride + width);
+                src.position(start + i * stride);
+                dst.put(src);
+            }
+            src.limit(limit);
+            src.position(start);
+        }
+
+        private void releasePacked() {
+            if (mPacked != null) {
+                mPackedY.release();
+                mPacked.release();
+                mPackedY = null;
+                mPacked = null;
+            }
+        }
+
+        private void releaseViews() {
+            if (mY != null) {
+                mY.release();
+                mU.release();
+                mV.release();
+                mY = mU = mV = null;
+            }
+            mWidth = mHeight = 0;
+        }
+
+        public void release() {
+            releaseViews();
+            mYuv.release();
+            releasePacked();
+        }
+    }
+
+    public static class JavaCamera2Frame extends CachedCameraFrame {
         @Override
-        public Mat gray() {
+        protected Mat createGray() {
             Image.Plane[] planes = mImage.getPlanes();
             int w = mImage.getWidth();
             int h = mImage.getHeight();
             assert(planes[0].getPixelStride() == 1);
             ByteBuffer y_plane = planes[0].getBuffer();
             int y_plane_step = planes[0].getRowStride();
-            mGray = new Mat(h, w, CvType.CV_8UC1, y_plane, y_plane_step);
-            return mGray;
+            return new Mat(h, w, CvType.CV_8UC1, y_plane, y_plane_step);
         }
 
         @Override
-        public Mat rgba() {
+        protected void convertRgba(Mat dst) {
             Image.Plane[] planes = mImage.getPlanes();
             int w = mImage.getWidth();
             int h = mImage.getHeight();
@@ -349,99 +573,67 @@ public class JavaCamera2View extends CameraBridgeViewBase {
 
 
             if (chromaPixelStride == 2) { // Chroma channels are interleaved
-                assert(planes[0].getPixelStride() == 1);
                 assert(planes[2].getPixelStride() == 2);
-                ByteBuffer y_plane = planes[0].getBuffer();
-                int y_plane_step = planes[0].getRowStride();
+                Mat y_mat = gray();
                 ByteBuffer uv_plane1 = planes[1].getBuffer();
                 int uv_plane1_step = planes[1].getRowStride();
                 ByteBuffer uv_plane2 = planes[2].getBuffer();
                 int uv_plane2_step = planes[2].getRowStride();
-                Mat y_mat = new Mat(h, w, CvType.CV_8UC1, y_plane, y_plane_step);
-                Mat uv_mat1 = new Mat(h / 2, w / 2, CvType.CV_8UC2, uv_plane1, uv_plane1_step);
-                Mat uv_mat2 = new Mat(h / 2, w / 2, CvType.CV_8UC2, uv_plane2, uv_plane2_step);
+                Mat uv_mat1 = mScope.track(new Mat(h / 2, w / 2, CvType.CV_8UC2, uv_plane1, uv_plane1_step));
+                Mat uv_mat2 = mScope.track(new Mat(h / 2, w / 2, CvType.CV_8UC2, uv_plane2, uv_plane2_step));
                 long addr_diff = uv_mat2.dataAddr() - uv_mat1.dataAddr();
                 if (addr_diff > 0) {
                     assert(addr_diff == 1);
-                    Imgproc.cvtColorTwoPlane(y_mat, uv_mat1, mRgba, Imgproc.COLOR_YUV2RGBA_NV12);
+                    Imgproc.cvtColorTwoPlane(y_mat, uv_mat1, dst, Imgproc.COLOR_YUV2RGBA_NV12);
                 } else {
                     assert(addr_diff == -1);
-                    Imgproc.cvtColorTwoPlane(y_mat, uv_mat2, mRgba, Imgproc.COLOR_YUV2RGBA_NV21);
+                    Imgproc.cvtColorTwoPlane(y_mat, uv_mat2, dst, Imgproc.COLOR_YUV2RGBA_NV21);
                 }
-                return mRgba;
             } else { // Chroma channels are not interleaved
-                byte[] yuv_bytes = new byte[w*(h+h/2)];
-                ByteBuffer y_plane = planes[0].getBuffer();
-                ByteBuffer u_plane = planes[1].getBuffer();
-                ByteBuffer v_plane = planes[2].getBuffer();
-
-                int yuv_bytes_offset = 0;
-
-                int y_plane_step = planes[0].getRowStride();
-                if (y_plane_step == w) {
-                    y_plane.get(yuv_bytes, 0, w*h);
-                    yuv_bytes_offset = w*h;
-                } else {
-                    int padding = y_plane_step - w;
-                    for (int i = 0; i < h; i++){
-                        y_plane.get(yuv_bytes, yuv_bytes_offset, w);
-                        yuv_bytes_offset += w;
-                        if (i < h - 1) {
-                            y_plane.position(y_plane.position() + padding);
-                        }
-                    }
-                    assert(yuv_bytes_offset == w * h);
-                }
-
-                int chromaRowStride = planes[1].getRowStride();
-                int chromaRowPadding = chromaRowStride - w/2;
-
-                if (chromaRowPadding == 0){
-                    // When the row stride of the chroma channels equals their width, we can copy
-                    // the entire channels in one go
-                    u_plane.get(yuv_bytes, yuv_bytes_offset, w*h/4);
-                    yuv_bytes_offset += w*h/4;
-                    v_plane.get(yuv_bytes, yuv_bytes_offset, w*h/4);
-                } else {
-                    // When not equal, we need to copy the channels row by row
-                    for (int i = 0; i < h/2; i++){
-                        u_plane.get(yuv_bytes, yuv_bytes_offset, w/2);
-                        yuv_bytes_offset += w/2;
-                        if (i < h/2-1){
-                            u_plane.position(u_plane.position() + chromaRowPadding);
-                        }
-                    }
-                    for (int i = 0; i < h/2; i++){
-                        v_plane.get(yuv_bytes, yuv_bytes_offset, w/2);
-                        yuv_bytes_offset += w/2;
-                        if (i < h/2-1){
-                            v_plane.position(v_plane.position() + chromaRowPadding);
-                        }
-                    }
-                }
-
-                Mat yuv_mat = new Mat(h+h/2, w, CvType.CV_8UC1);
-                yuv_mat.put(0, 0, yuv_bytes);
-                Imgproc.cvtColor(yuv_mat, mRgba, Imgproc.COLOR_YUV2RGBA_I420, 4);
-                return mRgba;
+                if (mI420 == null)
+                    mI420 = new I420Converter();
+                mI420.convert(gray(), planes[1].getBuffer(), planes[2].getBuffer(),
+                        planes[1].getRowStride(), dst);
             }
         }
 
-
         public JavaCamera2Frame(Image image) {
+            this();
+            mImage = image;
+        }
+
+        JavaCamera2Frame() {
             super();
+        }
+
+        void setImage(Image image) {
             mImage = image;
-            mRgba = new Mat();
-            mGray = new Mat();
+            invalidate(true);
         }
 
+        /**
+         * Detaches the frame from its image and releases the wrappers of its planes. The
+         * converted buffers are kept, so the next image of the same size is converted
+         * without reallocation.
+         */
         public void release() {
-            mRgba.release();
-            mGray.release();
+            invalidate(true);
+            mScope.close();
+            mImage = null;
+        }
+
+        void destroy() {
+            release();
+            releaseBuffers();
+            if (mI420 != null) {
+                mI420.release();
+                mI420 = null;
+            }
         }
 
         private Image mImage;
-        private Mat mRgba;
-        private Mat mGray;
+        private I420Converter mI420;
+        /* Owns the chroma plane wrappers of the current image until the frame is released */
+        private final MatScope mScope = new MatScope();
     };
 }
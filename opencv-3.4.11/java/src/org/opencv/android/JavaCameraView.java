@@ -1,6 +1,8 @@
 package org.opencv.android;
 
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
 
 import android.content.Context;
 import android.graphics.ImageFormat;
@@ -31,12 +33,16 @@ public class JavaCameraView extends CameraBridgeViewBase implements PreviewCallb
 
     private static final int MAGIC_TEXTURE_ID = 10;
     private static final String TAG = "JavaCameraView";
+    private static final int DEFAULT_CALLBACK_BUFFER_COUNT = 3;
+    private static final int NO_FRAME = -1;
 
-    private byte mBuffer[];
+    private int mCallbackBufferCount = DEFAULT_CALLBACK_BUFFER_COUNT;
+    private byte mBuffers[][];
     private Mat[] mFrameChain;
-    private int mChainIdx = 0;
+    /* Index of the newest filled callback buffer not yet taken by the worker, or NO_FRAME */
+    private final AtomicInteger mPendingIdx = new AtomicInteger(NO_FRAME);
     private Thread mThread;
-    private boolean mStopThread;
+    private volatile boolean mStopThread;
 
     protected Camera mCamera;
     protected JavaCameraFrame[] mCameraFrame;
@@ -66,6 +72,19 @@ public class JavaCameraView extends CameraBridgeViewBase implements PreviewCallb
         super(context, attrs);
     }
 
+    /**
+     * Sets how many preview callback buffers are queued to the camera. While the
+     * processing thread works on one frame, the camera keeps filling the others, so
+     * frames are only dropped when processing is slower than the camera.
+     * Takes effect the next time the camera is connected.
+     * @param count - number of buffers, at least 2
+     */
+    public void setCallbackBufferCount(int count) {
+        if (count < 2)
+            throw new IllegalArgumentException("At least 2 callback buffers are required");
+        mCallbackBufferCount = count;
+    }
+
     protected boolean initializeCamera(int width, int height) {
         Log.d(TAG, "Initialize java camera");
         boolean result = true;
@@ -190,21 +209,24 @@ public class JavaCameraView extends CameraBridgeViewBase implements PreviewCallb
 
                     int size = mFrameWidth * mFrameHeight;
                     size  = size * ImageFormat.getBitsPerPixel(params.getPreviewFormat()) / 8;
-                    mBuffer = new byte[size];
 
-                    mCamera.addCallbackBuffer(mBuffer);
+                    /* Every callback buffer has its own Mat, so a buffer can go back to
+                     * the camera as soon as the worker has taken its content */
+                    int count = mCallbackBufferCount;
+                    mBuffers = new byte[count][];
+                    mFrameChain = new Mat[count];
+                    mCameraFrame = new JavaCameraFrame[count];
+                    mPendingIdx.set(NO_FRAME);
+                    for (int i = 0; i < count; i++) {
+                        mBuffers[i] = new byte[size];
+                        mFrameChain[i] = acquireMat(mFrameHeight + (mFrameHeight/2), mFrameWidth, CvType.CV_8UC1);
+                        mCameraFrame[i] = new JavaCameraFrame(mFrameChain[i], mFrameWidth, mFrameHeight);
+                        mCamera.addCallbackBuffer(mBuffers[i]);
+                    }
                     mCamera.setPreviewCallbackWithBuffer(this);
 
-                    mFrameChain = new Mat[2];
-                    mFrameChain[0] = new Mat(mFrameHeight + (mFrameHeight/2), mFrameWidth, CvType.CV_8UC1);
-                    mFrameChain[1] = new Mat(mFrameHeight + (mFrameHeight/2), mFrameWidth, CvType.CV_8UC1);
-
                     AllocateCache();
 
-                    mCameraFrame = new JavaCameraFrame[2];
-                    mCameraFrame[0] = new JavaCameraFrame(mFrameChain[0], mFrameWidth, mFrameHeight);
-                    mCameraFrame[1] = new JavaCameraFrame(mFrameChain[1], mFrameWidth, mFrameHeight);
-
                     if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
                         mSurfaceTexture = new SurfaceTexture(MAGIC_TEXTURE_ID);
                         mCamera.setPreviewTexture(mSurfaceTexture);
@@ -235,19 +257,20 @@ public class JavaCameraView extends CameraBridgeViewBase implements PreviewCallb
                 mCamera.release();
             }
             mCamera = null;
-            if (mFrameChain != null) {
-                mFrameChain[0].release();
-                mFrameChain[1].release();
-            }
             if (mCameraFrame != null) {
-                mCameraFrame[0].release();
-                mCameraFrame[1].release();
+                for (JavaCameraFrame f : mCameraFrame)
+                    f.release();
             }
+            if (mFrameChain != null) {
+                /* After the frames, whose gray views point into these Mats */
+                for (Mat m : mFrameChain)
+                    releaseMat(m);
+                mFrameChain = null;
+            }
+            mPendingIdx.set(NO_FRAME);
         }
     }
 
-    private boolean mCameraFrameReady = false;
-
     @Override
     protected boolean connectCamera(int width, int height) {
 
@@ -259,8 +282,6 @@ public class JavaCameraView extends CameraBridgeViewBase implements PreviewCallb
         if (!initializeCamera(width, height))
             return false;
 
-        mCameraFrameReady = false;
-
         /* now we can start update thread */
         Log.d(TAG, "Starting processing thread");
         mStopThread = false;
@@ -279,9 +300,8 @@ public class JavaCameraView extends CameraBridgeViewBase implements PreviewCallb
         try {
             mStopThread = true;
             Log.d(TAG, "Notify thread");
-            synchronized (this) {
-                this.notify();
-            }
+            if (mThread != null)
+                LockSupport.unpark(mThread);
             Log.d(TAG, "Waiting for thread");
             if (mThread != null)
                 mThread.join();
@@ -293,39 +313,53 @@ public class JavaCameraView extends CameraBridgeViewBase implements PreviewCallb
 
         /* Now release camera */
         releaseCamera();
-
-        mCameraFrameReady = false;
     }
 
     @Override
     public void onPreviewFrame(byte[] frame, Camera arg1) {
         if (BuildConfig.DEBUG)
             Log.d(TAG, "Preview Frame received. Frame size: " + frame.length);
-        synchronized (this) {
-            mFrameChain[mChainIdx].put(0, 0, frame);
-            mCameraFrameReady = true;
-            this.notify();
+        byte[][] buffers = mBuffers;
+        int idx = NO_FRAME;
+        for (int i = 0; buffers != null && i < buffers.length; i++) {
+            if (buffers[i] == frame) {
+                idx = i;
+                break;
+            }
         }
-        if (mCamera != null)
-            mCamera.addCallbackBuffer(mBuffer);
+        if (idx == NO_FRAME)
+            return; // buffer of a previous camera session
+
+        /* Publish the newest frame. A frame the worker has not picked up yet is stale
+         * now, so its buffer goes straight back to the camera */
+        int stale = mPendingIdx.getAndSet(idx);
+        if (stale != NO_FRAME)
+            returnBuffer(stale);
+        Thread worker = mThread;
+        if (worker != null)
+            LockSupport.unpark(worker);
+    }
+
+    private void returnBuffer(int idx) {
+        Camera camera = mCamera;
+        if (camera != null)
+            camera.addCallbackBuffer(mBuffers[idx]);
     }
 
-    private class JavaCameraFrame implements CvCameraViewFrame {
+    private class JavaCameraFrame extends CachedCameraFrame {
         @Override
-        public Mat gray() {
+        protected Mat createGray() {
             return mYuvFrameData.submat(0, mHeight, 0, mWidth);
         }
 
         @Override
-        public Mat rgba() {
+        protected void convertRgba(Mat dst) {
             if (mPreviewFormat == ImageFormat.NV21)
-                Imgproc.cvtColor(mYuvFrameData, mRgba, Imgproc.COLOR_YUV2RGBA_NV21, 4);
+                Imgproc.cvtColor(mYuvFrameData, dst, Imgproc.COLOR_YUV2RGBA_NV21, 4);
             else if (mPreviewFormat == ImageFormat.YV12)
-                Imgproc.cvtColor(mYuvFrameData, mRgba, Imgproc.COLOR_YUV2RGB_I420, 4);  // COLOR_YUV2RGBA_YV12 produces inverted colors
+                Imgproc.cvtColor(mYuvFrameData, dst, Imgproc.COLOR_YUV2RGB_I420, 4);  // COLOR_YUV2RGBA_YV12 produces inverted colors
             else
                 throw new IllegalArgumentException("Preview Format can be NV21 or YV12");
-
-            return mRgba;
         }
 
         public JavaCameraFrame(Mat Yuv420sp, int width, int height) {
@@ -333,15 +367,20 @@ public class JavaCameraView extends CameraBridgeViewBase implements PreviewCallb
             mWidth = width;
             mHeight = height;
             mYuvFrameData = Yuv420sp;
-            mRgba = new Mat();
+        }
+
+        /**
+         * Called when the frame data has been refilled. The gray view stays valid.
+         */
+        public void onNewContent() {
+            invalidate(false);
         }
 
         public void release() {
-            mRgba.release();
+            releaseBuffers();
         }
 
         private Mat mYuvFrameData;
-        private Mat mRgba;
         private int mWidth;
         private int mHeight;
     };
@@ -351,27 +390,19 @@ public class JavaCameraView extends CameraBridgeViewBase implements PreviewCallb
         @Override
         public void run() {
             do {
-                boolean hasFrame = false;
-                synchronized (JavaCameraView.this) {
-                    try {
-                        while (!mCameraFrameReady && !mStopThread) {
-                            JavaCameraView.this.wait();
-                        }
-                    } catch (InterruptedException e) {
-                        e.printStackTrace();
-                    }
-                    if (mCameraFrameReady)
-                    {
-                        mChainIdx = 1 - mChainIdx;
-                        mCameraFrameReady = false;
-                        hasFrame = true;
-                    }
+                int idx = mPendingIdx.getAndSet(NO_FRAME);
+                if (idx == NO_FRAME) {
+                    LockSupport.park(JavaCameraView.this);
+                    continue;
                 }
 
-                if (!mStopThread && hasFrame) {
-                    if (!mFrameChain[1 - mChainIdx].empty())
-                        deliverAndDrawFrame(mCameraFrame[1 - mChainIdx]);
-                }
+                /* Take the frame content, then hand the buffer back before processing */
+                mFrameChain[idx].put(0, 0, mBuffers[idx]);
+                mCameraFrame[idx].onNewContent();
+                returnBuffer(idx);
+
+                if (!mStopThread && !mFrameChain[idx].empty())
+                    deliverAndDrawFrame(mCameraFrame[idx]);
             } while (!mStopThread);
             Log.d(TAG, "Finish processing thread");
         }
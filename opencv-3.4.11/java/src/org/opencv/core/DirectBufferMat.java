@@ -0,0 +1,75 @@
+package org.opencv.core;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Mat whose data lives in a direct ByteBuffer, which can be read and written from Java
+ * without copying through put() and get().
+ *
+ * The buffer is either allocated by the Mat or supplied by the caller, e.g. the plane of a
+ * camera image, and stays reachable as long as the Mat. The Mat starts at the address of the
+ * buffer, its position is ignored. buffer() returns the same ByteBuffer on every call, so
+ * prefer absolute get/put when it is shared. An OpenCV function that reallocates the Mat
+ * (e.g. create() with another size or type) moves its data out of the buffer, which
+ * isBufferValid() reports.
+ */
+public class DirectBufferMat extends Mat {
+    private final ByteBuffer mBuffer;
+    private final long mDataAddr;
+
+    /**
+     * Allocates a continuous Mat over a new direct buffer in native byte order.
+     */
+    public DirectBufferMat(int rows, int cols, int type) {
+        this(rows, cols, type, allocate(rows, cols, type));
+    }
+
+    /**
+     * Creates a continuous Mat over an existing direct buffer.
+     */
+    public DirectBufferMat(int rows, int cols, int type, ByteBuffer buffer) {
+        super(rows, cols, type, checkBuffer(buffer, (long) rows * cols * CvType.ELEM_SIZE(type)));
+        mBuffer = buffer;
+        mDataAddr = dataAddr();
+    }
+
+    /**
+     * Creates a Mat over an existing direct buffer whose rows are step bytes apart.
+     */
+    public DirectBufferMat(int rows, int cols, int type, ByteBuffer buffer, long step) {
+        super(rows, cols, type, checkBuffer(buffer, rows > 0 ? (rows - 1) * step + (long) cols * CvType.ELEM_SIZE(type) : 0), step);
+        mBuffer = buffer;
+        mDataAddr = dataAddr();
+    }
+
+    /**
+     * Returns the buffer holding the data of this Mat.
+     */
+    public ByteBuffer buffer() {
+        return mBuffer;
+    }
+
+    /**
+     * Returns false once the Mat has been released or reallocated, after which the buffer no
+     * longer holds its data.
+     */
+    public boolean isBufferValid() {
+        return mDataAddr != 0 && dataAddr() == mDataAddr;
+    }
+
+    private static ByteBuffer allocate(int rows, int cols, int type) {
+        long size = (long) rows * cols * CvType.ELEM_SIZE(type);
+        if (rows < 0 || cols < 0 || size > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Unsupported size: " + rows + "x" + cols);
+        return ByteBuffer.allocateDirect((int) size).order(ByteOrder.nativeOrder());
+    }
+
+    private static ByteBuffer checkBuffer(ByteBuffer buffer, long size) {
+        if (buffer == null || !buffer.isDirect())
+            throw new IllegalArgumentException("Buffer must be direct");
+        if (buffer.capacity() < size)
+            throw new IllegalArgumentException("Buffer of " + buffer.capacity() + " bytes, need " + size);
+        return buffer;
+    }
+}
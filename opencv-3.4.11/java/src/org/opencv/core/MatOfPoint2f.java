@@ -66,6 +66,72 @@ public class MatOfPoint2f extends Mat {
         return ap;
     }
 
+    /**
+     * Like fromArray(Point...), but copies only the first count points and stages them in a
+     * caller owned buffer instead of a new one.
+     * @param scratch - at least 2 * count elements, a multiple of 2
+     */
+    public void fromArray(Point[] a, int count, float[] scratch) {
+        if(count == 0)
+            return;
+        checkScratch(scratch.length, count * _channels);
+        for(int i=0; i<count; i++) {
+            Point p = a[i];
+            scratch[_channels*i+0] = (float) p.x;
+            scratch[_channels*i+1] = (float) p.y;
+        }
+        fromXY(scratch, count);
+    }
+
+    /**
+     * Like toArray(), but writes into a caller owned array. Points already in it are
+     * overwritten in place, null entries are filled with new ones.
+     * @param scratch - at least 2 * total() elements, a multiple of 2
+     * @return the number of points written
+     */
+    public int toArray(Point[] ap, float[] scratch) {
+        int num = (int) total();
+        if(num == 0)
+            return 0;
+        if(ap.length < num)
+            throw new IllegalArgumentException("Array of " + ap.length + " points, need " + num);
+        toXY(scratch);
+        for(int i=0; i<num; i++) {
+            if(ap[i] == null)
+                ap[i] = new Point();
+            ap[i].x = scratch[i*_channels];
+            ap[i].y = scratch[i*_channels+1];
+        }
+        return num;
+    }
+
+    /**
+     * Sets the first count points from interleaved coordinates x0, y0, x1, y1, ...
+     * The array is copied directly, without staging.
+     * @param xy - at least 2 * count elements, a multiple of 2
+     */
+    public void fromXY(float[] xy, int count) {
+        if(count == 0)
+            return;
+        checkScratch(xy.length, count * _channels);
+        alloc(count);
+        put(0, 0, xy); // clamped to the size of this Mat
+    }
+
+    /**
+     * Writes the points as interleaved coordinates x0, y0, x1, y1, ... directly into xy.
+     * @param xy - at least 2 * total() elements, a multiple of 2
+     * @return the number of points written
+     */
+    public int toXY(float[] xy) {
+        int num = (int) total();
+        if(num == 0)
+            return 0;
+        checkScratch(xy.length, num * _channels);
+        get(0, 0, xy);
+        return num;
+    }
+
     public void fromList(List<Point> lp) {
         Point ap[] = lp.toArray(new Point[0]);
         fromArray(ap);
@@ -75,4 +141,10 @@ public class MatOfPoint2f extends Mat {
         Point[] ap = toArray();
         return Arrays.asList(ap);
     }
+
+    private static void checkScratch(int length, int needed) {
+        if (length < needed || length % _channels != 0)
+            throw new IllegalArgumentException("Scratch buffer of " + length + " elements, need a multiple of "
+                    + _channels + " and at least " + needed);
+    }
 }
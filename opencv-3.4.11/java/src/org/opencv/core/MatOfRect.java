@@ -69,6 +69,51 @@ public class MatOfRect extends Mat {
             a[i] = new Rect(buff[i*_channels], buff[i*_channels+1], buff[i*_channels+2], buff[i*_channels+3]);
         return a;
     }
+
+    /**
+     * Like fromArray(Rect...), but copies only the first count rectangles and stages them in a
+     * caller owned buffer instead of a new one.
+     * @param scratch - at least 4 * count elements, a multiple of 4
+     */
+    public void fromArray(Rect[] a, int count, int[] scratch) {
+        if(count == 0)
+            return;
+        checkScratch(scratch.length, count * _channels);
+        alloc(count);
+        for(int i=0; i<count; i++) {
+            Rect r = a[i];
+            scratch[_channels*i+0] = r.x;
+            scratch[_channels*i+1] = r.y;
+            scratch[_channels*i+2] = r.width;
+            scratch[_channels*i+3] = r.height;
+        }
+        put(0, 0, scratch); // clamped to the size of this Mat
+    }
+
+    /**
+     * Like toArray(), but writes into a caller owned array. Rectangles already in it are
+     * overwritten in place, null entries are filled with new ones.
+     * @param scratch - at least 4 * total() elements, a multiple of 4
+     * @return the number of rectangles written
+     */
+    public int toArray(Rect[] ar, int[] scratch) {
+        int num = (int) total();
+        if(num == 0)
+            return 0;
+        if(ar.length < num)
+            throw new IllegalArgumentException("Array of " + ar.length + " rectangles, need " + num);
+        checkScratch(scratch.length, num * _channels);
+        get(0, 0, scratch);
+        for(int i=0; i<num; i++) {
+            if(ar[i] == null)
+                ar[i] = new Rect();
+            ar[i].x = scratch[i*_channels];
+            ar[i].y = scratch[i*_channels+1];
+            ar[i].width = scratch[i*_channels+2];
+            ar[i].height = scratch[i*_channels+3];
+        }
+        return num;
+    }
     public void fromList(List<Rect> lr) {
         Rect ap[] = lr.toArray(new Rect[0]);
         fromArray(ap);
@@ -78,4 +123,10 @@ public class MatOfRect extends Mat {
         Rect[] ar = toArray();
         return Arrays.asList(ar);
     }
+
+    private static void checkScratch(int length, int needed) {
+        if (length < needed || length % _channels != 0)
+            throw new IllegalArgumentException("Scratch buffer of " + length + " elements, need a multiple of "
+                    + _channels + " and at least " + needed);
+    }
 }
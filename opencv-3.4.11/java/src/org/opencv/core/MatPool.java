@@ -0,0 +1,260 @@
+package org.opencv.core;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+
+/**
+ * Thread-safe pool of Mats keyed by rows, cols and type.
+ *
+ * acquire() returns an idle Mat of the requested shape if the pool has one and allocates a new
+ * one otherwise; release() hands a Mat back for reuse. The content of an acquired Mat is
+ * undefined. Idle Mats are kept up to a total size in bytes, beyond which the least recently
+ * released ones are freed. The hit, miss and eviction counters help to size the pool for the
+ * frame shapes of an application.
+ *
+ * Idle Mats are held in one deque per shape, so acquire() does not look at Mats of other
+ * shapes, and in a list ordered by release time across all shapes, so eviction takes the
+ * oldest one directly. The list nodes are recycled, so once every shape was seen the pool
+ * allocates nothing on the Java heap.
+ */
+public class MatPool {
+    private final long mMaxBytes;
+    /* Idle Mats of each shape, the least recently released first */
+    private final HashMap<Shape, ArrayDeque<Node>> mIdle = new HashMap<Shape, ArrayDeque<Node>>();
+    /* Key for lookups, only used while holding the lock */
+    private final Shape mProbe = new Shape();
+    /* All idle Mats, the least recently released at the head */
+    private Node mHead;
+    private Node mTail;
+    /* Unused nodes, linked through next */
+    private Node mFree;
+    private int mIdleCount;
+    private long mIdleBytes;
+    private long mHits;
+    private long mMisses;
+    private long mEvictions;
+
+    private static final class Shape {
+        int rows;
+        int cols;
+        int type;
+
+        Shape set(int rows, int cols, int type) {
+            this.rows = rows;
+            this.cols = cols;
+            this.type = type;
+            return this;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Shape))
+                return false;
+            Shape other = (Shape) o;
+            return rows == other.rows && cols == other.cols && type == other.type;
+        }
+
+        @Override
+        public int hashCode() {
+            return (rows * 31 + cols) * 31 + type;
+        }
+    }
+
+    private static final class Node {
+        Mat mat;
+        long size;
+        ArrayDeque<Node> shape;
+        Node prev;
+        Node next;
+    }
+
+    /**
+     * @param maxBytes - largest total size of the idle Mats
+     */
+    public MatPool(long maxBytes) {
+        if (maxBytes < 0)
+            throw new IllegalArgumentException("Size must not be negative: " + maxBytes);
+        mMaxBytes = maxBytes;
+    }
+
+    /**
+     * Returns a continuous Mat of the given shape, reused if possible.
+     */
+    public Mat acquire(int rows, int cols, int type) {
+        synchronized (mIdle) {
+            ArrayDeque<Node> idle = mIdle.get(mProbe.set(rows, cols, type));
+            /* The most recently released Mat is the most likely to still be in the cache */
+            Node node = idle != null ? idle.pollLast() : null;
+            if (node != null) {
+                Mat mat = node.mat;
+                unlink(node);
+                mIdleBytes -= node.size;
+                recycle(node);
+                mHits++;
+                return mat;
+            }
+            mMisses++;
+        }
+        return new Mat(rows, cols, type);
+    }
+
+    public Mat acquire(Size size, int type) {
+        return acquire((int) size.height, (int) size.width, type);
+    }
+
+    /**
+     * Hands a Mat back to the pool. It must not be used by the caller afterwards. Mats that
+     * cannot be reused as a whole (empty, not continuous or views into another Mat) and Mats
+     * larger than the pool are released right away.
+     */
+    public void release(Mat mat) {
+        if (mat.empty() || !mat.isContinuous() || mat.isSubmatrix()) {
+            mat.release();
+            return;
+        }
+        long size = sizeOf(mat);
+        if (size > mMaxBytes) {
+            mat.release();
+            return;
+        }
+        int rows = mat.rows();
+        int cols = mat.cols();
+        int type = mat.type();
+        synchronized (mIdle) {
+            ArrayDeque<Node> idle = mIdle.get(mProbe.set(rows, cols, type));
+            if (idle == null) {
+                idle = new ArrayDeque<Node>();
+                mIdle.put(new Shape().set(rows, cols, type), idle);
+            }
+            Node node = mFree;
+            if (node != null)
+                mFree = node.next;
+            else
+                node = new Node();
+            node.mat = mat;
+            node.size = size;
+            node.shape = idle;
+            idle.addLast(node);
+            link(node);
+            mIdleBytes += size;
+            while (mIdleBytes > mMaxBytes) {
+                /* The oldest Mat overall is also the oldest of its shape */
+                Node evicted = mHead;
+                evicted.shape.pollFirst();
+                unlink(evicted);
+                mIdleBytes -= evicted.size;
+                evicted.mat.release();
+                recycle(evicted);
+                mEvictions++;
+            }
+        }
+    }
+
+    /**
+     * Releases all idle Mats. The counters are kept.
+     */
+    public void clear() {
+        synchronized (mIdle) {
+            while (mHead != null) {
+                Node node = mHead;
+                node.mat.release();
+                unlink(node);
+                recycle(node);
+            }
+            mIdle.clear();
+            mIdleBytes = 0;
+        }
+    }
+
+    public long getMaxBytes() {
+        return mMaxBytes;
+    }
+
+    /**
+     * Returns the number of idle Mats in the pool.
+     */
+    public int getIdleCount() {
+        synchronized (mIdle) {
+            return mIdleCount;
+        }
+    }
+
+    /**
+     * Returns the total size of the idle Mats in bytes.
+     */
+    public long getIdleBytes() {
+        synchronized (mIdle) {
+            return mIdleBytes;
+        }
+    }
+
+    /**
+     * Returns how many acquire() calls were served with an idle Mat.
+     */
+    public long getHitCount() {
+        synchronized (mIdle) {
+            return mHits;
+        }
+    }
+
+    /**
+     * Returns how many acquire() calls had to allocate a new Mat.
+     */
+    public long getMissCount() {
+        synchronized (mIdle) {
+            return mMisses;
+        }
+    }
+
+    /**
+     * Returns how many idle Mats were freed to keep the pool within its size.
+     */
+    public long getEvictionCount() {
+        synchronized (mIdle) {
+            return mEvictions;
+        }
+    }
+
+    @Override
+    public String toString() {
+        synchronized (mIdle) {
+            return "MatPool [ idle=" + mIdleCount + " bytes=" + mIdleBytes + "/" + mMaxBytes
+                    + " hits=" + mHits + " misses=" + mMisses + " evictions=" + mEvictions + " ]";
+        }
+    }
+
+    private void link(Node node) {
+        node.prev = mTail;
+        node.next = null;
+        if (mTail != null)
+            mTail.next = node;
+        else
+            mHead = node;
+        mTail = node;
+        mIdleCount++;
+    }
+
+    private void unlink(Node node) {
+        if (node.prev != null)
+            node.prev.next = node.next;
+        else
+            mHead = node.next;
+        if (node.next != null)
+            node.next.prev = node.prev;
+        else
+            mTail = node.prev;
+        mIdleCount--;
+    }
+
+    private void recycle(Node node) {
+        node.mat = null;
+        node.shape = null;
+        node.prev = null;
+        node.next = mFree;
+        mFree = node;
+    }
+
+    private static long sizeOf(Mat mat) {
+        return mat.total() * mat.elemSize();
+    }
+}
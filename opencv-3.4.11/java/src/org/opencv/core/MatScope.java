@@ -0,0 +1,192 @@
+package org.opencv.core;
+
+import java.io.Closeable;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Owner of the Mats created during a scope, e.g. the processing of one camera frame.
+ *
+ * Mats created with mat() or handed to track() are released in reverse order when the scope
+ * is closed, instead of keeping their native buffers until the garbage collector finalizes
+ * them. Only the small native header is still freed by Mat.finalize(), so a Mat must not be
+ * used after its scope is closed. A closed scope can be used again, so a camera loop can keep
+ * one scope and close it after every frame.
+ *
+ * Closing a scope does not take its Mats off the finalizer queue. Every Mat is registered for
+ * finalization when it is constructed, and its header can only be deleted by its own
+ * finalizer, since nativeObj is final and the finalizer would delete it again. A scope
+ * therefore bounds the native memory that garbage Mats hold, but each Mat it creates still
+ * costs one finalizer run. Hot paths that need fewer finalizable objects should keep their
+ * Mats across frames, or take them from a MatPool, rather than create them in a scope.
+ *
+ * In debug mode the scope records the stack trace that allocated each Mat. If a scope is
+ * garbage collected without being closed, its Mats are reported as leaked together with
+ * those traces, both on System.err and through dumpLeaks(). Their buffers are then only
+ * freed by their own finalizers. A long-lived scope that misses a close() is never collected,
+ * so in debug mode a scope that owns more than getMaxSize() Mats reports the Mats it owns as
+ * well, once until it is closed again.
+ */
+public final class MatScope implements Closeable {
+    private static final int MAX_LEAKS = 64;
+
+    private static volatile boolean sDebug;
+    private static volatile int sMaxSize = 256;
+    private static final List<Throwable> sLeaks = new ArrayList<Throwable>();
+    private static int sLeakCount;
+
+    private final ArrayList<Mat> mMats = new ArrayList<Mat>();
+    private final ArrayList<Throwable> mTraces = new ArrayList<Throwable>();
+    private boolean mOverflowReported;
+
+    /**
+     * Enables recording of allocation stack traces for the Mats tracked afterwards.
+     */
+    public static void setDebug(boolean debug) {
+        sDebug = debug;
+    }
+
+    public static boolean isDebug() {
+        return sDebug;
+    }
+
+    /**
+     * Sets how many Mats a scope may own in debug mode before they are reported as leaked.
+     */
+    public static void setMaxSize(int maxSize) {
+        if (maxSize < 1)
+            throw new IllegalArgumentException("Max size must be positive: " + maxSize);
+        sMaxSize = maxSize;
+    }
+
+    public static int getMaxSize() {
+        return sMaxSize;
+    }
+
+    /**
+     * Creates an empty Mat owned by this scope.
+     */
+    public Mat mat() {
+        return track(new Mat());
+    }
+
+    /**
+     * Creates a Mat of the given size and type owned by this scope.
+     */
+    public Mat mat(int rows, int cols, int type) {
+        return track(new Mat(rows, cols, type));
+    }
+
+    public Mat mat(Size size, int type) {
+        return track(new Mat(size, type));
+    }
+
+    /**
+     * Hands a Mat (or a MatOf* subclass) over to this scope, e.g. a submat or the result of a
+     * function that returns a new Mat.
+     * @return the given Mat
+     */
+    public <T extends Mat> T track(T mat) {
+        if (mat == null)
+            throw new IllegalArgumentException("Mat must not be null");
+        mMats.add(mat);
+        if (sDebug) {
+            mTraces.add(new Throwable("Mat allocated here"));
+            if (!mOverflowReported && mMats.size() > sMaxSize) {
+                mOverflowReported = true;
+                reportLeaks("MatScope: owns " + mMats.size() + " Mats, a close() was probably missed");
+            }
+        } else {
+            mTraces.add(null);
+        }
+        return mat;
+    }
+
+    /**
+     * Takes a Mat out of this scope, so it survives close() and must be released by the caller.
+     * @return true if the Mat was owned by this scope
+     */
+    public boolean detach(Mat mat) {
+        for (int i = mMats.size() - 1; i >= 0; i--) {
+            if (mMats.get(i) == mat) {
+                mMats.remove(i);
+                mTraces.remove(i);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the number of Mats currently owned by this scope.
+     */
+    public int size() {
+        return mMats.size();
+    }
+
+    /**
+     * Releases every Mat owned by this scope, the most recently created first.
+     */
+    @Override
+    public void close() {
+        for (int i = mMats.size() - 1; i >= 0; i--)
+            mMats.get(i).release();
+        mMats.clear();
+        mTraces.clear();
+        mOverflowReported = false;
+    }
+
+    @Override
+    protected void finalize() throws Throwable {
+        try {
+            /* The Mats may already be finalized themselves, so they are only counted here */
+            if (!mMats.isEmpty())
+                reportLeaks("MatScope: leaked a Mat, its scope was not closed");
+        } finally {
+            super.finalize();
+        }
+    }
+
+    private void reportLeaks(String message) {
+        synchronized (sLeaks) {
+            for (int i = 0; i < mTraces.size(); i++) {
+                Throwable trace = mTraces.get(i);
+                if (trace == null)
+                    continue;
+                sLeakCount++;
+                if (sLeaks.size() < MAX_LEAKS)
+                    sLeaks.add(trace);
+                System.err.println(message);
+                trace.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Returns how many Mats with a recorded trace have been reported as leaked so far.
+     */
+    public static int getLeakCount() {
+        synchronized (sLeaks) {
+            return sLeakCount;
+        }
+    }
+
+    /**
+     * Prints the allocation stack traces of the leaked Mats, up to the first 64.
+     */
+    public static void dumpLeaks(PrintWriter writer) {
+        synchronized (sLeaks) {
+            writer.println("MatScope: " + sLeakCount + " leaked Mats");
+            for (Throwable trace : sLeaks)
+                trace.printStackTrace(writer);
+        }
+    }
+
+    public static void clearLeaks() {
+        synchronized (sLeaks) {
+            sLeaks.clear();
+            sLeakCount = 0;
+        }
+    }
+}
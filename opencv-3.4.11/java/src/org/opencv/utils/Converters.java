@@ -1,5 +1,7 @@
 package org.opencv.utils;
 
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -22,6 +24,21 @@ import org.opencv.core.KeyPoint;
 
 public class Converters {
 
+    /* Staging arrays for buffers that are not backed by an accessible array */
+    private static final int CHUNK_SIZE = 1024;
+    private static final ThreadLocal<float[]> FLOAT_CHUNK = new ThreadLocal<float[]>() {
+        @Override
+        protected float[] initialValue() {
+            return new float[CHUNK_SIZE];
+        }
+    };
+    private static final ThreadLocal<int[]> INT_CHUNK = new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+            return new int[CHUNK_SIZE];
+        }
+    };
+
     public static Mat vector_Point_to_Mat(List<Point> pts) {
         return vector_Point_to_Mat(pts, CvType.CV_32S);
     }
@@ -303,6 +320,100 @@ public class Converters {
         }
     }
 
+    /**
+     * Copies a float[] into a new single column Mat without boxing.
+     */
+    public static Mat vector_float_to_Mat(float[] data) {
+        Mat res = new Mat();
+        vector_float_to_Mat(data, data != null ? data.length : 0, res);
+        return res;
+    }
+
+    /**
+     * Copies the first count elements of a float[] into dst, which is reallocated as a
+     * count x 1 CV_32FC1 Mat only if its size or type differs.
+     */
+    public static void vector_float_to_Mat(float[] data, int count, Mat dst) {
+        if (count < 0 || count > (data != null ? data.length : 0))
+            throw new IllegalArgumentException("count out of range: " + count);
+        dst.create(count, 1, CvType.CV_32FC1);
+        if (count > 0)
+            dst.put(0, 0, data); // clamped to the rows of dst
+    }
+
+    /**
+     * Copies the remaining elements of a buffer into dst, which is reallocated as a
+     * single column CV_32FC1 Mat only if its size or type differs. The position of the
+     * buffer is not changed.
+     */
+    public static void vector_float_to_Mat(FloatBuffer data, Mat dst) {
+        int pos = data.position();
+        int count = data.remaining();
+        dst.create(count, 1, CvType.CV_32FC1);
+        if (count == 0)
+            return;
+        if (data.hasArray() && data.arrayOffset() + pos == 0) {
+            dst.put(0, 0, data.array());
+            return;
+        }
+        float[] chunk = FLOAT_CHUNK.get();
+        for (int row = 0; row < count; row += chunk.length) {
+            int n = Math.min(chunk.length, count - row);
+            for (int i = 0; i < n; i++)
+                chunk[i] = data.get(pos + row + i);
+            dst.put(row, 0, chunk); // the last chunk is clamped to the end of dst
+        }
+    }
+
+    /**
+     * Copies a single column CV_32FC1 Mat into a caller provided array without boxing.
+     * @return the number of elements copied, i.e. the rows of m
+     */
+    public static int Mat_to_vector_float(Mat m, float[] data) {
+        if (data == null)
+            throw new IllegalArgumentException("data == null");
+        int count = m.rows();
+        if (CvType.CV_32FC1 != m.type() || m.cols() != 1)
+            throw new IllegalArgumentException(
+                    "CvType.CV_32FC1 != m.type() ||  m.cols()!=1\n" + m);
+        if (count > data.length)
+            throw new IllegalArgumentException("data.length < m.rows(): " + data.length + " < " + count);
+        if (count > 0)
+            m.get(0, 0, data);
+        return count;
+    }
+
+    /**
+     * Copies a single column CV_32FC1 Mat into a buffer, starting at its position.
+     * The position of the buffer is not changed.
+     * @return the number of elements copied, i.e. the rows of m
+     */
+    public static int Mat_to_vector_float(Mat m, FloatBuffer data) {
+        if (data == null)
+            throw new IllegalArgumentException("data == null");
+        int count = m.rows();
+        if (CvType.CV_32FC1 != m.type() || m.cols() != 1)
+            throw new IllegalArgumentException(
+                    "CvType.CV_32FC1 != m.type() ||  m.cols()!=1\n" + m);
+        int pos = data.position();
+        if (count > data.remaining())
+            throw new IllegalArgumentException("data.remaining() < m.rows(): " + data.remaining() + " < " + count);
+        if (count == 0)
+            return 0;
+        if (data.hasArray() && data.arrayOffset() + pos == 0) {
+            m.get(0, 0, data.array());
+            return count;
+        }
+        float[] chunk = FLOAT_CHUNK.get();
+        for (int row = 0; row < count; row += chunk.length) {
+            int n = Math.min(chunk.length, count - row);
+            m.get(row, 0, chunk); // the last chunk is clamped to the end of m
+            for (int i = 0; i < n; i++)
+                data.put(pos + row + i, chunk[i]);
+        }
+        return count;
+    }
+
     public static Mat vector_uchar_to_Mat(List<Byte> bs) {
         Mat res;
         int count = (bs != null) ? bs.size() : 0;
@@ -386,6 +497,100 @@ public class Converters {
         }
     }
 
+    /**
+     * Copies a int[] into a new single column Mat without boxing.
+     */
+    public static Mat vector_int_to_Mat(int[] data) {
+        Mat res = new Mat();
+        vector_int_to_Mat(data, data != null ? data.length : 0, res);
+        return res;
+    }
+
+    /**
+     * Copies the first count elements of a int[] into dst, which is reallocated as a
+     * count x 1 CV_32SC1 Mat only if its size or type differs.
+     */
+    public static void vector_int_to_Mat(int[] data, int count, Mat dst) {
+        if (count < 0 || count > (data != null ? data.length : 0))
+            throw new IllegalArgumentException("count out of range: " + count);
+        dst.create(count, 1, CvType.CV_32SC1);
+        if (count > 0)
+            dst.put(0, 0, data); // clamped to the rows of dst
+    }
+
+    /**
+     * Copies the remaining elements of a buffer into dst, which is reallocated as a
+     * single column CV_32SC1 Mat only if its size or type differs. The position of the
+     * buffer is not changed.
+     */
+    public static void vector_int_to_Mat(IntBuffer data, Mat dst) {
+        int pos = data.position();
+        int count = data.remaining();
+        dst.create(count, 1, CvType.CV_32SC1);
+        if (count == 0)
+            return;
+        if (data.hasArray() && data.arrayOffset() + pos == 0) {
+            dst.put(0, 0, data.array());
+            return;
+        }
+        int[] chunk = INT_CHUNK.get();
+        for (int row = 0; row < count; row += chunk.length) {
+            int n = Math.min(chunk.length, count - row);
+            for (int i = 0; i < n; i++)
+                chunk[i] = data.get(pos + row + i);
+            dst.put(row, 0, chunk); // the last chunk is clamped to the end of dst
+        }
+    }
+
+    /**
+     * Copies a single column CV_32SC1 Mat into a caller provided array without boxing.
+     * @return the number of elements copied, i.e. the rows of m
+     */
+    public static int Mat_to_vector_int(Mat m, int[] data) {
+        if (data == null)
+            throw new IllegalArgumentException("data == null");
+        int count = m.rows();
+        if (CvType.CV_32SC1 != m.type() || m.cols() != 1)
+            throw new IllegalArgumentException(
+                    "CvType.CV_32SC1 != m.type() ||  m.cols()!=1\n" + m);
+        if (count > data.length)
+            throw new IllegalArgumentException("data.length < m.rows(): " + data.length + " < " + count);
+        if (count > 0)
+            m.get(0, 0, data);
+        return count;
+    }
+
+    /**
+     * Copies a single column CV_32SC1 Mat into a buffer, starting at its position.
+     * The position of the buffer is not changed.
+     * @return the number of elements copied, i.e. the rows of m
+     */
+    public static int Mat_to_vector_int(Mat m, IntBuffer data) {
+        if (data == null)
+            throw new IllegalArgumentException("data == null");
+        int count = m.rows();
+        if (CvType.CV_32SC1 != m.type() || m.cols() != 1)
+            throw new IllegalArgumentException(
+                    "CvType.CV_32SC1 != m.type() ||  m.cols()!=1\n" + m);
+        int pos = data.position();
+        if (count > data.remaining())
+            throw new IllegalArgumentException("data.remaining() < m.rows(): " + data.remaining() + " < " + count);
+        if (count == 0)
+            return 0;
+        if (data.hasArray() && data.arrayOffset() + pos == 0) {
+            m.get(0, 0, data.array());
+            return count;
+        }
+        int[] chunk = INT_CHUNK.get();
+        for (int row = 0; row < count; row += chunk.length) {
+            int n = Math.min(chunk.length, count - row);
+            m.get(row, 0, chunk); // the last chunk is clamped to the end of m
+            for (int i = 0; i < n; i++)
+                data.put(pos + row + i, chunk[i]);
+        }
+        return count;
+    }
+
     public static void Mat_to_vector_char(Mat m, List<Byte> bs) {
         if (bs == null)
             throw new IllegalArgumentException("Output List can't be null");
@@ -669,6 +874,45 @@ public class Converters {
         }
     }
 
+    /**
+     * Copies a double[] into a new single column Mat without boxing.
+     */
+    public static Mat vector_double_to_Mat(double[] data) {
+        Mat res = new Mat();
+        vector_double_to_Mat(data, data != null ? data.length : 0, res);
+        return res;
+    }
+
+    /**
+     * Copies the first count elements of a double[] into dst, which is reallocated as a
+     * count x 1 CV_64FC1 Mat only if its size or type differs.
+     */
+    public static void vector_double_to_Mat(double[] data, int count, Mat dst) {
+        if (count < 0 || count > (data != null ? data.length : 0))
+            throw new IllegalArgumentException("count out of range: " + count);
+        dst.create(count, 1, CvType.CV_64FC1);
+        if (count > 0)
+            dst.put(0, 0, data); // clamped to the rows of dst
+    }
+
+    /**
+     * Copies a single column CV_64FC1 Mat into a caller provided array without boxing.
+     * @return the number of elements copied, i.e. the rows of m
+     */
+    public static int Mat_to_vector_double(Mat m, double[] data) {
+        if (data == null)
+            throw new IllegalArgumentException("data == null");
+        int count = m.rows();
+        if (CvType.CV_64FC1 != m.type() || m.cols() != 1)
+            throw new IllegalArgumentException(
+                    "CvType.CV_64FC1 != m.type() ||  m.cols()!=1\n" + m);
+        if (count > data.length)
+            throw new IllegalArgumentException("data.length < m.rows(): " + data.length + " < " + count);
+        if (count > 0)
+            m.get(0, 0, data);
+        return count;
+    }
+
     public static Mat vector_DMatch_to_Mat(List<DMatch> matches) {
         Mat res;
         int count = (matches != null) ? matches.size() : 0;